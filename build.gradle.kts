@@ -6,6 +6,7 @@ plugins {
     `maven-publish`
     jacoco
     id("com.github.spotbugs") version "6.5.5"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 repositories {
@@ -51,6 +52,39 @@ tasks.spotbugsTest {
     enabled = false
 }
 
+tasks.matching { it.name == "spotbugsJmh" || it.name == "spotbugsVector" }.configureEach {
+    enabled = false
+}
+
+// The optional SIMD scanner is compiled against the incubating Vector API in a source set of its
+// own, so that only its compilation warns about the incubating module, and is packaged in the
+// main jar. It is only used at runtime when the module is added, as it is for the tests and
+// benchmarks.
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+val vector: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+    options.compilerArgs.addAll(vectorModule)
+}
+
+tasks.jar {
+    from(vector.output)
+}
+
+dependencies {
+    testRuntimeOnly(vector.output)
+    "jmhRuntimeOnly"(vector.output)
+}
+
+jmh {
+    jmhVersion = "1.37"
+    profilers.add("gc")
+    jvmArgsAppend.addAll(vectorModule)
+}
+
 publishing {
     publications.create<MavenPublication>("maven") {
         from(components["java"])
@@ -100,6 +134,7 @@ tasks.withType<Javadoc> {
 
 tasks.test {
     useJUnitPlatform()
+    jvmArgs(vectorModule)
     finalizedBy(tasks.jacocoTestReport)
     outputs.upToDateWhen { false }
 }
@@ -0,0 +1,77 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import io.mikael.urlbuilder.util.Encoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/// Throughput of shared builders, encoders and decoders by platform thread count, the scaling curve
+/// once read side by side. [ConcurrencyTest] checks the results of the same kind of workload.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+
+    private static final int INPUTS = 256;
+
+    private final UrlBuilder sharedBase = UrlBuilder.fromString("https://www.example.com/base/path?shared=1#top");
+
+    private final Encoder sharedEncoder = new Encoder(StandardCharsets.UTF_8);
+
+    private final Decoder sharedDecoder = new Decoder(StandardCharsets.UTF_8);
+
+    private final String[] inputs = new String[INPUTS];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < INPUTS; i++) {
+            inputs[i] = "http://host" + (i % 7) + ".example.com:" + (8000 + i)
+                    + "/p/" + i + "/h%C3%B6pl%C3%A4?q=" + i + "&r=a+b%26c#f" + i;
+        }
+    }
+
+    private String workload() {
+        final int i = ThreadLocalRandom.current().nextInt(INPUTS);
+        final UrlBuilder parsed = UrlBuilder.fromString(inputs[i], sharedDecoder);
+        final UrlBuilder changed = parsed
+                .withScheme("https")
+                .addParameter("n", "ä" + i)
+                .setParameter("q", "v" + i)
+                .removeParameters("r");
+        final UrlBuilder derived = sharedBase.addParameter("i", Integer.toString(i));
+        final String decoded = sharedDecoder.urlDecode(sharedEncoder.encodeQueryElement("k " + i + "&ö"), true);
+        return changed + " " + derived + " " + decoded;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String threads1() {
+        return workload();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public String threads2() {
+        return workload();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String threads4() {
+        return workload();
+    }
+
+    /// One thread per available processor.
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String threadsMax() {
+        return workload();
+    }
+
+}
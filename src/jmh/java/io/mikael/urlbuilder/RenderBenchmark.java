@@ -0,0 +1,49 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Encoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/// Rendering cost, run with `./gradlew jmh`, which enables the gc profiler for the allocation rate.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    private static final String URL = "https://user@www.example.com:8443/api/v1/products/12345/reviews"
+            + "?page=2&size=50&sort=date%20desc&q=caf%C3%A9#top";
+
+    private UrlBuilder base;
+
+    private Encoder otherEncoder;
+
+    @Setup
+    public void setUp() {
+        base = UrlBuilder.fromString(URL);
+        base.toString();
+        otherEncoder = new Encoder(StandardCharsets.UTF_8);
+    }
+
+    /// A derived builder, whose unchanged components are already encoded.
+    @Benchmark
+    public String renderDerived() {
+        return base.withScheme("http").toString();
+    }
+
+    /// A derived builder with another encoder, which encodes the query, user info and fragment again.
+    @Benchmark
+    public String renderReencoded() {
+        return base.withEncoder(otherEncoder).toString();
+    }
+
+    @Benchmark
+    public String parseAndRender() {
+        return UrlBuilder.fromString(URL).toString();
+    }
+
+}
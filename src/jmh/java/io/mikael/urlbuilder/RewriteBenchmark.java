@@ -0,0 +1,71 @@
+package io.mikael.urlbuilder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/// Matching and rewriting against 10k rules: 500 hosts with 10 path prefixes each, half of them
+/// with a parameter condition, and 5000 rules for any host on a prefix and a parameter.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RewriteBenchmark {
+
+    private UrlRewriter rewriter;
+
+    private UrlBuilder hostRule;
+
+    private UrlBuilder anyHostRule;
+
+    private UrlBuilder noRule;
+
+    @Setup
+    public void setUp() {
+        final UrlRewriter.Builder builder = UrlRewriter.builder();
+        for (int host = 0; host < 500; host++) {
+            for (int path = 0; path < 10; path++) {
+                final UrlRewriter.Rule rule = UrlRewriter.rule()
+                        .host("www" + host + ".example.com")
+                        .pathPrefix("/section" + path + "/")
+                        .setHost("edge" + host + ".example.net")
+                        .addParameter("rewritten", "1");
+                if (path % 2 == 0) {
+                    rule.parameter("lang", "en");
+                }
+                builder.add(rule);
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            builder.add(UrlRewriter.rule().pathPrefix("/legacy" + i + "/").hasParameter("ref" + i % 100)
+                    .replacePathPrefix("/current" + i + "/"));
+        }
+        rewriter = builder.build();
+        hostRule = UrlBuilder.fromString("https://www250.example.com/section4/articles/1234?lang=en&page=2");
+        anyHostRule = UrlBuilder.fromString("https://any.example.org/legacy4242/item?ref42=x");
+        noRule = UrlBuilder.fromString("https://www250.example.com/other/articles/1234?lang=en&page=2");
+    }
+
+    @Benchmark
+    public int matchHost() {
+        return rewriter.match(hostRule);
+    }
+
+    @Benchmark
+    public int matchNone() {
+        return rewriter.match(noRule);
+    }
+
+    @Benchmark
+    public UrlBuilder rewriteHost() {
+        return rewriter.rewrite(hostRule);
+    }
+
+    @Benchmark
+    public UrlBuilder rewriteAnyHost() {
+        return rewriter.rewrite(anyHostRule);
+    }
+
+}
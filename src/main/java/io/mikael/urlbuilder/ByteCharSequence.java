@@ -0,0 +1,59 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/// A [CharSequence] view of bytes, one char per byte, so the request-target parser can work on
+/// raw request bytes. Indexes are absolute buffer indexes and the buffer position is never moved.
+/// Percent-escapes are decoded to the target charset straight from these bytes; strings are only
+/// built for the components that end up in the [UrlBuilder].
+final class ByteCharSequence implements CharSequence {
+
+    private final ByteBuffer bytes;
+
+    ByteCharSequence(final ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return (char) (bytes.get(index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + start, end - start, ISO_8859_1);
+        }
+        final byte[] copy = new byte[end - start];
+        bytes.get(start, copy);
+        return new String(copy, ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder;
+
+/// The outcome of [UrlBuilder#tryParse(String)]: either the parsed builder, or the reason and
+/// the input offset at which parsing stopped. Invalid input never throws or allocates an exception.
+public final class ParseResult {
+
+    /// Why an input was rejected.
+    public enum Error {
+        /// A `%` not followed by two hexadecimal digits, such as `%ax`.
+        INVALID_PERCENT_ENCODING,
+        /// A port that is not a decimal number, or does not fit in an `int`.
+        INVALID_PORT,
+        /// An IPv6 literal opened with `[` but never closed with `]`.
+        UNCLOSED_IP_LITERAL
+    }
+
+    private final UrlBuilder builder;
+
+    private final Error error;
+
+    private final int errorOffset;
+
+    private ParseResult(final UrlBuilder builder, final Error error, final int errorOffset) {
+        this.builder = builder;
+        this.error = error;
+        this.errorOffset = errorOffset;
+    }
+
+    static ParseResult success(final UrlBuilder builder) {
+        return new ParseResult(builder, null, -1);
+    }
+
+    static ParseResult failure(final Error error, final int errorOffset) {
+        return new ParseResult(null, error, errorOffset);
+    }
+
+    public boolean isValid() {
+        return builder != null;
+    }
+
+    /// The parsed builder, or null if the input was invalid.
+    public UrlBuilder builder() {
+        return builder;
+    }
+
+    /// The reason the input was rejected, or null if it was valid.
+    public Error error() {
+        return error;
+    }
+
+    /// The offset of the offending character in the input, or -1 if it was valid.
+    public int errorOffset() {
+        return errorOffset;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? builder.toString() : error + " at offset " + errorOffset;
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Routes paths to values by templates like `/users/{id}/orders/{orderId}` and `/static/**`.
+///
+/// Templates are compiled into one trie of path segments. A segment is a literal, a `{name}`
+/// variable matching any one non-empty segment, or a final `**` matching the rest of the path,
+/// including nothing. Where several templates could match, a literal segment is preferred over a
+/// variable and a variable over `**`, segment by segment from the left, falling back to the next
+/// choice when the rest of the path doesn't match. A leading `/` is optional, and a trailing one
+/// is an empty last segment, so `/users/` and `/users` are different paths.
+///
+/// Matching needs no regexes and, apart from the returned [Match], no allocation: literal
+/// segments are looked up by hashing them in place, and variables are recorded as offsets into
+/// the input, only turned into strings when asked for. Encoded paths, such as raw request paths,
+/// are matched with [#matchEncoded(CharSequence, int, int, Decoder)], decoding only the segments
+/// that contain a `%`, with [Decoder#decodePath(CharSequence, int, int)], so an encoded `%2F` stays
+/// inside its segment. Routers are immutable and thread-safe.
+///
+/// @param <T> the type of the values routed to
+public final class PathRouter<T> {
+
+    private final Node<T> root;
+
+    private final int maxVariables;
+
+    private PathRouter(final Node<T> root, final int maxVariables) {
+        this.root = root;
+        this.maxVariables = maxVariables;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /// Matches the path of the builder on the same segments the builder has, so a `/` inside a
+    /// segment, rendered as `%2F`, doesn't separate segments. Offsets in the result are into the
+    /// encoded path, and the variables are decoded. Returns null if no template matches.
+    public Match<T> match(final UrlBuilder url) {
+        final String path = url.encodedPath();
+        return match(path, 0, path.length(), url.pathDecoder());
+    }
+
+    /// Matches a decoded path, returning null if no template matches.
+    public Match<T> match(final CharSequence path) {
+        return match(path, 0, path.length(), null);
+    }
+
+    /// Matches the still percent-encoded path in `path[start, end)`, decoding segments with the
+    /// decoder where needed. Offsets in the result are into the encoded path, and the variables
+    /// are decoded. Returns null if no template matches.
+    public Match<T> matchEncoded(final CharSequence path, final int start, final int end, final Decoder decoder) {
+        return match(path, start, end, decoder);
+    }
+
+    private Match<T> match(final CharSequence path, final int start, final int end, final Decoder decoder) {
+        final Match<T> m = new Match<>(path, end, decoder, maxVariables);
+        final int first = start < end && path.charAt(start) == '/' ? start + 1 : start;
+        return m.matchFrom(root, first, 0) ? m : null;
+    }
+
+    /// The outcome of a successful match, with the variables as offsets into the matched input.
+    public static final class Match<T> {
+
+        private final CharSequence input;
+
+        private final int end;
+
+        /// The decoder of an encoded input, or null for a decoded one.
+        private final Decoder decoder;
+
+        private final int[] bounds;
+
+        private Route<T> route;
+
+        private int restStart = -1;
+
+        private Match(final CharSequence input, final int end, final Decoder decoder, final int maxVariables) {
+            this.input = input;
+            this.end = end;
+            this.decoder = decoder;
+            this.bounds = new int[maxVariables * 2];
+        }
+
+        /// Depth first over the trie, from the segment starting at `pos`. A `pos` after
+        /// [#end] means that the path has no segments left.
+        private boolean matchFrom(final Node<T> node, final int pos, final int variables) {
+            if (pos > end) {
+                if (node.route != null) {
+                    route = node.route;
+                    return true;
+                }
+                return node.rest != null && matchRest(node, end);
+            }
+            int segmentEnd = pos;
+            while (segmentEnd < end && input.charAt(segmentEnd) != '/') {
+                segmentEnd++;
+            }
+            final Node<T> literal = node.literal(input, pos, segmentEnd, decoder);
+            if (literal != null && matchFrom(literal, segmentEnd + 1, variables)) {
+                return true;
+            }
+            if (node.variable != null && segmentEnd > pos) {
+                bounds[variables * 2] = pos;
+                bounds[variables * 2 + 1] = segmentEnd;
+                if (matchFrom(node.variable, segmentEnd + 1, variables + 1)) {
+                    return true;
+                }
+            }
+            return node.rest != null && matchRest(node, pos);
+        }
+
+        private boolean matchRest(final Node<T> node, final int pos) {
+            route = node.rest;
+            restStart = pos;
+            return true;
+        }
+
+        /// The value of the matched template.
+        public T value() {
+            return route.value;
+        }
+
+        /// The matched template, as it was added.
+        public String template() {
+            return route.template;
+        }
+
+        public int variableCount() {
+            return route.names.length;
+        }
+
+        public String variableName(final int index) {
+            return route.names[index];
+        }
+
+        /// Where the variable starts in the matched input.
+        public int variableStart(final int index) {
+            checkIndex(index);
+            return bounds[index * 2];
+        }
+
+        /// Where the variable ends in the matched input.
+        public int variableEnd(final int index) {
+            checkIndex(index);
+            return bounds[index * 2 + 1];
+        }
+
+        /// The decoded value of the variable.
+        public String variable(final int index) {
+            return decode(variableStart(index), variableEnd(index));
+        }
+
+        /// The decoded value of the named variable, or null if the template has no such variable.
+        public String variable(final String name) {
+            for (int i = 0; i < route.names.length; i++) {
+                if (route.names[i].equals(name)) {
+                    return variable(i);
+                }
+            }
+            return null;
+        }
+
+        /// The variables by name, in template order.
+        public Map<String, String> variables() {
+            final Map<String, String> ret = new LinkedHashMap<>();
+            for (int i = 0; i < route.names.length; i++) {
+                ret.put(route.names[i], variable(i));
+            }
+            return ret;
+        }
+
+        /// Where the part of the path matched by `**` starts, or -1 if the template has no `**`.
+        public int restStart() {
+            return restStart;
+        }
+
+        /// The decoded part of the path matched by `**`, or null if the template has no `**`.
+        public String rest() {
+            return restStart == -1 ? null : decode(restStart, end);
+        }
+
+        private void checkIndex(final int index) {
+            if (index < 0 || index >= route.names.length) {
+                throw new IndexOutOfBoundsException("No variable " + index + " in " + route.template);
+            }
+        }
+
+        private String decode(final int start, final int end) {
+            return decoder == null
+                    ? input.subSequence(start, end).toString()
+                    : decoder.decodePath(input, start, end);
+        }
+
+        @Override
+        public String toString() {
+            return route.template + " " + variables();
+        }
+
+    }
+
+    /// Compiles templates into a [PathRouter].
+    public static final class Builder<T> {
+
+        private final MutableNode<T> root = new MutableNode<>();
+
+        private int maxVariables;
+
+        private Builder() {
+        }
+
+        /// Adds a template routing to the value.
+        ///
+        /// @throws IllegalArgumentException if `**` is not the last segment, or if a template of
+        ///         the same shape has already been added
+        public Builder<T> add(final String template, final T value) {
+            final String path = template.startsWith("/") ? template.substring(1) : template;
+            final String[] segments = path.split("/", -1);
+            final List<String> names = new ArrayList<>();
+            MutableNode<T> node = root;
+            for (int i = 0; i < segments.length; i++) {
+                final String segment = segments[i];
+                if (segment.equals("**")) {
+                    if (i != segments.length - 1) {
+                        throw new IllegalArgumentException("** must be the last segment: " + template);
+                    }
+                    node.rest = route(node.rest, template, names, value);
+                    return this;
+                } else if (segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}")) {
+                    names.add(segment.substring(1, segment.length() - 1));
+                    node = node.variable != null ? node.variable : (node.variable = new MutableNode<>());
+                } else {
+                    node = node.literals.computeIfAbsent(segment, s -> new MutableNode<>());
+                }
+            }
+            node.route = route(node.route, template, names, value);
+            return this;
+        }
+
+        private Route<T> route(final Route<T> existing, final String template, final List<String> names,
+                               final T value) {
+            if (existing != null) {
+                throw new IllegalArgumentException(
+                        "Template " + template + " has the same shape as " + existing.template);
+            }
+            maxVariables = Math.max(maxVariables, names.size());
+            return new Route<>(template, names.toArray(new String[0]), value);
+        }
+
+        public PathRouter<T> build() {
+            return new PathRouter<>(root.freeze(), maxVariables);
+        }
+
+    }
+
+    private record Route<T>(String template, String[] names, T value) { }
+
+    private static final class Node<T> {
+
+        /// Open addressing by [String#hashCode()], a power of two in size, or null without literals.
+        private final String[] keys;
+
+        private final Node<T>[] literals;
+
+        private final Node<T> variable;
+
+        private final Route<T> rest;
+
+        private final Route<T> route;
+
+        private Node(final String[] keys, final Node<T>[] literals, final Node<T> variable,
+                     final Route<T> rest, final Route<T> route) {
+            this.keys = keys;
+            this.literals = literals;
+            this.variable = variable;
+            this.rest = rest;
+            this.route = route;
+        }
+
+        /// The child for the segment in `input[start, end)`, decoding it first if it is encoded.
+        Node<T> literal(final CharSequence input, final int start, final int end, final Decoder decoder) {
+            if (keys == null) {
+                return null;
+            }
+            if (decoder != null) {
+                for (int i = start; i < end; i++) {
+                    if (input.charAt(i) == '%') {
+                        final String decoded = decoder.decodePath(input, start, end);
+                        return literal(decoded, 0, decoded.length(), null);
+                    }
+                }
+            }
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + input.charAt(i);
+            }
+            final int mask = keys.length - 1;
+            for (int slot = spread(hash) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                if (regionEquals(keys[slot], input, start, end)) {
+                    return literals[slot];
+                }
+            }
+            return null;
+        }
+
+        private static boolean regionEquals(final String key, final CharSequence input, final int start,
+                                            final int end) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != input.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        static int spread(final int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+    }
+
+    private static final class MutableNode<T> {
+
+        private final Map<String, MutableNode<T>> literals = new HashMap<>();
+
+        private MutableNode<T> variable;
+
+        private Route<T> rest;
+
+        private Route<T> route;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node<T> freeze() {
+            String[] keys = null;
+            Node<T>[] nodes = null;
+            if (!literals.isEmpty()) {
+                final int size = Integer.highestOneBit(literals.size() * 2 - 1) << 1;
+                keys = new String[size];
+                nodes = new Node[size];
+                for (final Map.Entry<String, MutableNode<T>> e : literals.entrySet()) {
+                    int slot = Node.spread(e.getKey().hashCode()) & (size - 1);
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & (size - 1);
+                    }
+                    keys[slot] = e.getKey();
+                    nodes[slot] = e.getValue().freeze();
+                }
+            }
+            return new Node<>(keys, nodes, variable == null ? null : variable.freeze(), rest, route);
+        }
+
+    }
+
+}
@@ -21,11 +21,19 @@ import static io.mikael.urlbuilder.util.UrlParameterMultimap.*;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiPredicate;
 
 /// A utility class for building and manipulating URLs.
 ///
@@ -41,6 +49,10 @@ public final class UrlBuilder {
 
     private static final Charset DEFAULT_ENCODING = StandardCharsets.UTF_8;
 
+    private static final Decoder DEFAULT_DECODER = Decoder.forCharset(DEFAULT_ENCODING);
+
+    private static final Encoder DEFAULT_ENCODER = Encoder.forCharset(DEFAULT_ENCODING);
+
     private final Decoder decoder;
 
     private final Encoder encoder;
@@ -55,12 +67,34 @@ public final class UrlBuilder {
 
     public final String path;
 
+    /// The path as segments, which keeps a `/` inside a segment apart from the separators,
+    /// and caches the encoded form. Null when [#path] is.
+    final UrlPath urlPath;
+
     public final Map<String, List<String>> queryParameters;
 
-    private final UrlParameterMultimap.Immutable queryParametersMultimap;
+    final UrlParameterMultimap.Immutable queryParametersMultimap;
 
     public final String fragment;
 
+    /// Cached result of [#toString()]. Racy single-check, like [String#hashCode()].
+    private String rendered;
+
+    /// The encoded components, computed on first render and handed on to derived builders whose
+    /// component and encoder are unchanged, see [#derive]. Racy single-check, like [#rendered].
+    private String encodedUserInfo;
+
+    private String asciiHostName;
+
+    private String encodedQuery;
+
+    private String encodedFragment;
+
+    /// Cached result of [#toUriWithException()]. Volatile, unlike the `String` caches, as
+    /// [URI] keeps its components in fields which are not final, so that without it another
+    /// thread could see a partly built instance.
+    private volatile URI uri;
+
     private UrlBuilder() {
         this(null, null, null, null, null, null, null, null, null);
     }
@@ -72,17 +106,18 @@ public final class UrlBuilder {
         final String userInfo,
         final String hostName,
         final Integer port,
-        final String path,
+        final UrlPath urlPath,
         final UrlParameterMultimap queryParametersMultimap,
         final String fragment
     ) {
-        this.decoder = Objects.requireNonNullElseGet(decoder, () -> new Decoder(DEFAULT_ENCODING));
-        this.encoder = Objects.requireNonNullElseGet(encoder, () -> new Encoder(DEFAULT_ENCODING));
+        this.decoder = Objects.requireNonNullElse(decoder, DEFAULT_DECODER);
+        this.encoder = Objects.requireNonNullElse(encoder, DEFAULT_ENCODER);
         this.scheme = scheme;
         this.userInfo = userInfo;
         this.hostName = hostName;
         this.port = port;
-        this.path = path;
+        this.urlPath = urlPath;
+        this.path = urlPath == null ? null : urlPath.toString();
         this.queryParametersMultimap = Objects.requireNonNullElseGet(
                 queryParametersMultimap, UrlParameterMultimap::newMultimap).immutable();
         this.queryParameters = this.queryParametersMultimap;
@@ -96,7 +131,7 @@ public final class UrlBuilder {
         return new UrlBuilder();
     }
 
-    private static UrlBuilder of(
+    static UrlBuilder of(
         final Decoder decoder,
         final Encoder encoder,
         final String scheme,
@@ -106,6 +141,21 @@ public final class UrlBuilder {
         final String path,
         final UrlParameterMultimap queryParameters,
         final String fragment
+    ) {
+        return new UrlBuilder(decoder, encoder, scheme, userInfo, hostName, port, UrlPath.of(path),
+                queryParameters, fragment);
+    }
+
+    static UrlBuilder of(
+        final Decoder decoder,
+        final Encoder encoder,
+        final String scheme,
+        final String userInfo,
+        final String hostName,
+        final Integer port,
+        final UrlPath path,
+        final UrlParameterMultimap queryParameters,
+        final String fragment
     ) {
         return new UrlBuilder(decoder, encoder, scheme, userInfo, hostName, port, path, queryParameters, fragment);
     }
@@ -115,7 +165,7 @@ public final class UrlBuilder {
      * Assume that the query paremeters were percent-encoded, as the standard suggests, as UTF-8.
      */
     public static UrlBuilder fromString(final String url) {
-        return fromString(url, DEFAULT_ENCODING);
+        return fromString(url, DEFAULT_DECODER);
     }
 
     /// Constructs a UrlBuilder from a full or partial URL string.
@@ -129,7 +179,7 @@ public final class UrlBuilder {
     ///         - A non-numeric port number
     ///
     public static UrlBuilder fromString(final String url, final String inputEncoding) {
-        return fromString(url, Charset.forName(inputEncoding));
+        return fromString(url, Decoder.forCharset(inputEncoding));
     }
 
     /// Constructs a `UrlBuilder` from a full or partial URL string.
@@ -143,7 +193,7 @@ public final class UrlBuilder {
     ///         - A non-numeric port number
     ///
     public static UrlBuilder fromString(final String url, final Charset inputEncoding) {
-        return fromString(url, new Decoder(inputEncoding));
+        return fromString(url, Decoder.forCharset(inputEncoding));
     }
 
     /// Constructs a `UrlBuilder` from a full or partial URL string.
@@ -155,119 +205,213 @@ public final class UrlBuilder {
     ///         - An invalid percent-encoding sequence (e.g., `%ax`)
     ///         - A non-numeric port number
     ///
-    public static UrlBuilder fromString(String inputUri, final Decoder decoder) {
-        final int firstPound = inputUri.indexOf('#');
-        final String fragment;
-        if (firstPound != -1) {
-            if (inputUri.length() > firstPound + 1) {
-                fragment = inputUri.substring(firstPound + 1);
-            } else {
-                fragment = null;
-            }
-            inputUri = inputUri.substring(0, firstPound);
-        } else {
-            fragment = null;
+    /// @throws IllegalArgumentException if an IPv6 literal is missing its closing `]`
+    ///
+    /// @see #tryParse(String, Decoder)
+    public static UrlBuilder fromString(final String inputUri, final Decoder decoder) {
+        final UrlParser parser = new UrlParser(decoder, DEFAULT_ENCODER);
+        final UrlBuilder ret = parse(parser, inputUri, 0, inputUri.length(), decoder, false);
+        if (ret == null) {
+            throw parser.exception(inputUri);
         }
+        return ret;
+    }
 
-        final int firstQuestionMark = inputUri.indexOf('?');
-        final String query;
-        if (firstQuestionMark != -1) {
-            if (inputUri.length() > firstQuestionMark + 1) {
-                query = inputUri.substring(firstQuestionMark + 1);
-            } else {
-                query = null;
-            }
-            inputUri = inputUri.substring(0, firstQuestionMark);
-        } else {
-            query = null;
-        }
+    /// Constructs a `UrlBuilder` like [#fromString(String)], dropping the query parameters whose
+    /// key matches `excluded` while parsing, without ever decoding their values. Invalid
+    /// percent-encoding is still rejected anywhere in the input, dropped pairs included.
+    public static UrlBuilder fromString(final String url, final ParameterFilter excluded) {
+        return fromString(url, DEFAULT_DECODER, excluded);
+    }
 
-        final int firstColon = inputUri.indexOf(':'); // either for schema, password or port
-        final int firstSlash = inputUri.indexOf('/');
-        final String schema;
-        if ((firstColon != -1 && firstColon < firstSlash) || (firstColon != -1 && firstSlash == -1)) {
-            schema = inputUri.substring(0, firstColon);
-            inputUri = inputUri.substring(firstColon + 1);
-        } else {
-            schema = null;
+    /// Like [#fromString(String, ParameterFilter)], decoding with the given decoder.
+    public static UrlBuilder fromString(final String url, final Decoder decoder, final ParameterFilter excluded) {
+        final UrlParser parser = new UrlParser(decoder, DEFAULT_ENCODER, excluded);
+        final UrlBuilder ret = parse(parser, url, 0, url.length(), decoder, false);
+        if (ret == null) {
+            throw parser.exception(url);
         }
+        return ret;
+    }
 
-        final int firstDoubleSlash = inputUri.indexOf("//");
-        String authority;
-        if (firstDoubleSlash == 0) {
-            final int nextSlash = inputUri.indexOf('/', 2);
-            if (nextSlash != -1) {
-                authority = inputUri.substring(2, nextSlash);
-                inputUri = inputUri.substring(nextSlash);
-            } else {
-                authority = inputUri.substring(2);
-                inputUri = "";
-            }
-        } else {
-            authority = null;
-        }
+    /// Constructs a `UrlBuilder` from the URL in `src[start, end)`, without copying the range
+    /// out of the surrounding buffer first.
+    ///
+    /// @throws NumberFormatException for an invalid percent-encoding sequence or port, see [#fromString(String, Decoder)]
+    /// @throws IllegalArgumentException if an IPv6 literal is missing its closing `]`
+    public static UrlBuilder fromString(final CharSequence src, final int start, final int end) {
+        return fromString(src, start, end, DEFAULT_DECODER);
+    }
 
-        final int firstAtSign = authority != null ? authority.indexOf('@') : -1;
-        String userInfo;
-        // username (':' password)? '@'
-        if (firstAtSign > -1) {
-            userInfo = decoder.decodeUserInfo(authority.substring(0, firstAtSign));
-            authority = authority.substring(firstAtSign + 1);
-        } else {
-            userInfo = null;
-        }
+    /// Like [#fromString(CharSequence, int, int)], decoding with the given charset.
+    public static UrlBuilder fromString(final CharSequence src, final int start, final int end,
+                                        final Charset inputEncoding) {
+        return fromString(src, start, end, Decoder.forCharset(inputEncoding));
+    }
 
-        final int firstSquareBracketOpen = authority != null ? authority.indexOf('[') : -1;
-        // [IPv6] | IPv4 | hostname
-        String hostName = null;
-        if (firstSquareBracketOpen > -1) {
-            final int firstSquareBracketClosed = authority.indexOf(']');
-            hostName = authority.substring(firstSquareBracketOpen, firstSquareBracketClosed + 1);
-            authority = authority.substring(firstSquareBracketClosed + 1);
+    /// Like [#fromString(CharSequence, int, int)], decoding with the given decoder.
+    public static UrlBuilder fromString(final CharSequence src, final int start, final int end,
+                                        final Decoder decoder) {
+        Objects.checkFromToIndex(start, end, src.length());
+        final UrlParser parser = new UrlParser(decoder, DEFAULT_ENCODER);
+        final UrlBuilder ret = parse(parser, src, start, end, decoder, false);
+        if (ret == null) {
+            throw parser.exception(src);
         }
+        return ret;
+    }
 
-        final int firstAuthorityColon = authority != null ? authority.indexOf(':') : -1;
-        if (firstAuthorityColon > -1 && hostName == null) {
-            hostName = authority.substring(0, firstAuthorityColon);
-            authority = authority.substring(firstAuthorityColon);
-        } else if (firstAuthorityColon == -1 && hostName == null) {
-            hostName = authority;
-            authority = null;
-        }
+    /// Parses a full or partial URL string like [#fromString(String)], but reports invalid input
+    /// through the returned [ParseResult] instead of throwing, which is much cheaper when a
+    /// noticeable share of the input is malformed.
+    public static ParseResult tryParse(final String url) {
+        return tryParse(url, DEFAULT_DECODER);
+    }
 
-        final String portString;
-        // ':' port
-        if (authority == null || authority.isEmpty()) {
-            portString = null;
-        } else {
-            portString = authority.substring(1);
+    /// Parses a full or partial URL string like [#fromString(String, Charset)], without throwing.
+    public static ParseResult tryParse(final String url, final Charset inputEncoding) {
+        return tryParse(url, Decoder.forCharset(inputEncoding));
+    }
+
+    /// Parses a full or partial URL string like [#fromString(String, Decoder)], without throwing.
+    public static ParseResult tryParse(final String url, final Decoder decoder) {
+        final UrlParser parser = new UrlParser(decoder, DEFAULT_ENCODER);
+        final UrlBuilder ret = parse(parser, url, 0, url.length(), decoder, false);
+        return ret != null ? ParseResult.success(ret) : ParseResult.failure(parser.error(), parser.errorOffset());
+    }
+
+    /// Parses the URL in `src[start, end)` like [#fromString(CharSequence, int, int, Decoder)], without
+    /// throwing for invalid input. Error offsets are relative to `src`, not to `start`.
+    public static ParseResult tryParse(final CharSequence src, final int start, final int end,
+                                       final Decoder decoder) {
+        Objects.checkFromToIndex(start, end, src.length());
+        final UrlParser parser = new UrlParser(decoder, DEFAULT_ENCODER);
+        final UrlBuilder ret = parse(parser, src, start, end, decoder, false);
+        return ret != null ? ParseResult.success(ret) : ParseResult.failure(parser.error(), parser.errorOffset());
+    }
+
+    /// Constructs a `UrlBuilder` from an HTTP request-target, as received in the request line,
+    /// in `src[offset, offset + length)`.
+    ///
+    /// Handles origin-form (`/path?query`), absolute-form (`http://host/path`), authority-form
+    /// (`host:port`, for `CONNECT`) and asterisk-form (`*`, kept as the path). The bytes are parsed
+    /// in place and percent-escapes are decoded from them straight to UTF-8 text, without first
+    /// turning the whole target into a `String`. Bytes outside US-ASCII, which a valid target
+    /// does not contain, are read as ISO-8859-1.
+    ///
+    /// @throws NumberFormatException for an invalid percent-encoding sequence or port
+    /// @throws IllegalArgumentException if an IPv6 literal is missing its closing `]`
+    public static UrlBuilder fromRequestTarget(final byte[] src, final int offset, final int length) {
+        return fromRequestTarget(src, offset, length, DEFAULT_ENCODING);
+    }
+
+    /// Like [#fromRequestTarget(byte[], int, int)], percent-decoding to the given charset.
+    public static UrlBuilder fromRequestTarget(final byte[] src, final int offset, final int length,
+                                               final Charset inputEncoding) {
+        Objects.checkFromIndexSize(offset, length, src.length);
+        return fromRequestTarget(ByteBuffer.wrap(src), offset, offset + length, Decoder.forCharset(inputEncoding));
+    }
+
+    /// Like [#fromRequestTarget(byte[], int, int)], reading the bytes between the buffer's position
+    /// and limit. The buffer's position is not changed.
+    public static UrlBuilder fromRequestTarget(final ByteBuffer src, final Charset inputEncoding) {
+        return fromRequestTarget(src, src.position(), src.limit(), Decoder.forCharset(inputEncoding));
+    }
+
+    private static UrlBuilder fromRequestTarget(final ByteBuffer src, final int start, final int end,
+                                                final Decoder decoder) {
+        final CharSequence input = new ByteCharSequence(src);
+        final UrlParser parser = new UrlParser(decoder, DEFAULT_ENCODER);
+        final UrlBuilder ret = parse(parser, input, start, end, decoder, true);
+        if (ret == null) {
+            throw parser.exception(input);
         }
+        return ret;
+    }
 
-        final Integer port;
-        if (portString != null && !portString.isEmpty()) {
-            port = Integer.parseUnsignedInt(portString);
+    /// Parses an HTTP request-target like [#fromRequestTarget(byte[], int, int, Charset)], without
+    /// throwing for invalid input. Error offsets are indexes into `src`.
+    public static ParseResult tryParseRequestTarget(final byte[] src, final int offset, final int length,
+                                                    final Decoder decoder) {
+        Objects.checkFromIndexSize(offset, length, src.length);
+        final UrlParser parser = new UrlParser(decoder, DEFAULT_ENCODER);
+        final UrlBuilder ret = parse(parser, new ByteCharSequence(ByteBuffer.wrap(src)),
+                offset, offset + length, decoder, true);
+        return ret != null ? ParseResult.success(ret) : ParseResult.failure(parser.error(), parser.errorOffset());
+    }
+
+    private static UrlBuilder parse(final UrlParser parser, final CharSequence input, final int start, final int end,
+                                    final Decoder decoder, final boolean requestTarget) {
+        final UrlParseEvent event = new UrlParseEvent();
+        event.begin();
+        final MetricsListener metrics = Metrics.listener();
+        final UrlBuilder ret;
+        if (metrics == null) {
+            ret = requestTarget ? parser.parseRequestTarget(input, start, end) : parser.parse(input, start, end);
         } else {
-            port = null;
+            final long startTime = System.nanoTime();
+            ret = requestTarget ? parser.parseRequestTarget(input, start, end) : parser.parse(input, start, end);
+            metrics.record(MetricsListener.Operation.PARSE, end - start, System.nanoTime() - startTime);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.inputLength = end - start;
+            event.parameterCount = ret == null ? 0 : ret.queryParametersMultimap.size();
+            event.charset = decoder.charset().name();
+            event.commit();
         }
+        return ret;
+    }
 
-        final String path = decoder.decodePath(inputUri);
+    /// Like [#of], but reuses this builder's encoded components where they are unchanged.
+    private UrlBuilder derive(
+        final Decoder decoder,
+        final Encoder encoder,
+        final String scheme,
+        final String userInfo,
+        final String hostName,
+        final Integer port,
+        final UrlPath path,
+        final UrlParameterMultimap queryParameters,
+        final String fragment
+    ) {
+        final UrlBuilder ret = new UrlBuilder(decoder, encoder, scheme, userInfo, hostName, port, path,
+                queryParameters, fragment);
+        if (ret.hostName == this.hostName) {
+            ret.asciiHostName = this.asciiHostName;
+        }
+        if (ret.encoder == this.encoder) {
+            if (ret.userInfo == this.userInfo) {
+                ret.encodedUserInfo = this.encodedUserInfo;
+            }
+            if (ret.queryParametersMultimap == this.queryParametersMultimap) {
+                ret.encodedQuery = this.encodedQuery;
+            }
+            if (ret.fragment == this.fragment) {
+                ret.encodedFragment = this.encodedFragment;
+            }
+        }
+        return ret;
+    }
 
-        final Encoder encoder = new Encoder(DEFAULT_ENCODING);
-        return of(decoder, encoder, schema, userInfo, hostName, port, path,
-                decoder.parseQueryString(query), fragment);
+    /// Like [#derive], keeping the decoder, the encoder and the user info, for [UrlRewriter].
+    UrlBuilder derive(final String scheme, final String hostName, final Integer port, final UrlPath path,
+                      final UrlParameterMultimap queryParameters, final String fragment) {
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, path, queryParameters, fragment);
     }
 
     /**
      * Constructs a {@link UrlBuilder} from a {@link java.net.URI}.
+     * The raw, still percent-encoded components are decoded once, like {@link #fromString(String)} does.
      */
     public static UrlBuilder fromUri(final URI uri) {
-        final Decoder decoder = new Decoder(DEFAULT_ENCODING);
-        return of(decoder, new Encoder(DEFAULT_ENCODING),
-                uri.getScheme(), uri.getUserInfo(), uri.getHost(),
+        final Decoder decoder = DEFAULT_DECODER;
+        return of(decoder, DEFAULT_ENCODER,
+                uri.getScheme(), decoder.decodeUserInfo(uri.getRawUserInfo()), uri.getHost(),
                 uri.getPort() == -1 ? null : uri.getPort(),
-                decoder.decodePath(uri.getRawPath()),
+                decoder.decodePathSegments(uri.getRawPath()),
                 decoder.parseQueryString(uri.getRawQuery()),
-                decoder.decodeFragment(uri.getFragment()));
+                decoder.decodeFragment(uri.getRawFragment()));
     }
 
     /// Constructs a [UrlBuilder] from a [java.net.URL].
@@ -278,63 +422,308 @@ public final class UrlBuilder {
     ///         - A non-numeric port number
     ///
     public static UrlBuilder fromUrl(final URL url) {
-        final Decoder decoder = new Decoder(DEFAULT_ENCODING);
-        return of(decoder, new Encoder(DEFAULT_ENCODING),
-                url.getProtocol(), url.getUserInfo(), url.getHost(),
+        final Decoder decoder = DEFAULT_DECODER;
+        return of(decoder, DEFAULT_ENCODER,
+                url.getProtocol(), decoder.decodeUserInfo(url.getUserInfo()), url.getHost(),
                 url.getPort() == -1 ? null : url.getPort(),
-                decoder.decodePath(url.getPath()),
+                decoder.decodePathSegments(url.getPath()),
                 decoder.parseQueryString(url.getQuery()),
                 decoder.decodeFragment(url.getRef()));
     }
 
-    public void toString(final Appendable out) throws IOException {
-        if (null != this.scheme) {
-            out.append(this.scheme);
-            out.append(':');
-        }
-        if (null != this.hostName) {
-            out.append("//");
-            if (this.userInfo != null) {
-                out.append(encoder.encodeUserInfo(this.userInfo));
-                out.append('@');
+    /// Resolves a URI reference against this builder, as specified in
+    /// <a href="https://tools.ietf.org/html/rfc3986#section-5.2">RFC 3986 section 5.2</a>.
+    ///
+    /// The reference is percent-decoded with this builder's decoder, and the result
+    /// keeps this builder's encoder.
+    ///
+    /// @throws NumberFormatException if the reference contains:
+    ///
+    ///         - An invalid percent-encoding sequence (e.g., `%ax`)
+    ///         - A non-numeric port number
+    ///
+    public UrlBuilder resolve(final String reference) {
+        return new Resolver(this).resolve(reference);
+    }
+
+    /// Resolves each of the URI references against this builder, see [#resolve(String)].
+    ///
+    /// The base path is analyzed only once, for all the references.
+    public List<UrlBuilder> resolveAll(final Iterable<String> references) {
+        final Resolver resolver = new Resolver(this);
+        final List<UrlBuilder> ret = new ArrayList<>();
+        for (final String reference : references) {
+            ret.add(resolver.resolve(reference));
+        }
+        return ret;
+    }
+
+    /// Reference resolution against a fixed base URI.
+    ///
+    /// Paths are merged and their dot segments removed as lists of decoded segments, so that an
+    /// encoded `%2F` in a segment of either path stays inside its segment.
+    private static final class Resolver {
+
+        private final UrlBuilder base;
+
+        /// The base path without its last segment, see RFC 3986 section 5.2.3.
+        private final List<String> mergePrefix;
+
+        Resolver(final UrlBuilder base) {
+            this.base = base;
+            final List<String> baseSegments = base.urlPath == null
+                    ? Collections.emptyList() : base.urlPath.segments();
+            if (base.hostName != null && (baseSegments.isEmpty()
+                    || baseSegments.size() == 1 && baseSegments.get(0).isEmpty())) {
+                this.mergePrefix = Collections.singletonList("");
+            } else {
+                this.mergePrefix = baseSegments.subList(0, Math.max(0, baseSegments.size() - 1));
             }
-            out.append(IDN.toASCII(this.hostName));
         }
-        if (null != this.port) {
-            out.append(':');
-            out.append(Integer.toString(this.port));
+
+        UrlBuilder resolve(final String reference) {
+            final Decoder decoder = base.decoder;
+            final int schemeEnd = schemeEnd(reference);
+            if (schemeEnd != -1 || reference.startsWith("//")) {
+                final UrlBuilder r = fromString(reference, decoder);
+                return base.derive(decoder, base.encoder, schemeEnd != -1 ? r.scheme : base.scheme,
+                        r.userInfo, r.hostName, r.port, removeDotSegments(r.urlPath),
+                        r.queryParametersMultimap, r.fragment);
+            }
+
+            int end = reference.length();
+            final int firstPound = reference.indexOf('#');
+            final String fragment;
+            if (firstPound != -1) {
+                fragment = firstPound + 1 < end ? reference.substring(firstPound + 1) : null;
+                end = firstPound;
+            } else {
+                fragment = null;
+            }
+            int firstQuestionMark = reference.indexOf('?');
+            if (firstQuestionMark >= end) {
+                firstQuestionMark = -1;
+            }
+            final int pathEnd = firstQuestionMark != -1 ? firstQuestionMark : end;
+
+            final UrlPath path;
+            final UrlParameterMultimap query;
+            if (pathEnd == 0) {
+                path = base.urlPath;
+                query = firstQuestionMark != -1
+                        ? decoder.parseQueryString(reference, firstQuestionMark + 1, end)
+                        : base.queryParametersMultimap;
+            } else {
+                final List<String> segments = decoder.decodePathSegments(reference, 0, pathEnd).segments();
+                if (reference.charAt(0) == '/') {
+                    path = UrlPath.ofSegments(removeDotSegments(segments));
+                } else {
+                    final List<String> merged = new ArrayList<>(mergePrefix.size() + segments.size());
+                    merged.addAll(mergePrefix);
+                    merged.addAll(segments);
+                    path = UrlPath.ofSegments(removeDotSegments(merged));
+                }
+                query = firstQuestionMark != -1
+                        ? decoder.parseQueryString(reference, firstQuestionMark + 1, end)
+                        : null;
+            }
+            return base.derive(decoder, base.encoder, base.scheme, base.userInfo, base.hostName, base.port,
+                    path, query, fragment);
+        }
+
+        /// Returns the index of the colon ending the reference's scheme, or -1 if it has none.
+        private static int schemeEnd(final String reference) {
+            for (int i = 0; i < reference.length(); i++) {
+                final char c = reference.charAt(i);
+                if (c == ':') {
+                    return i > 0 ? i : -1;
+                }
+                final boolean alpha = ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
+                if (!alpha && (i == 0 || !(('0' <= c && c <= '9') || c == '+' || c == '-' || c == '.'))) {
+                    return -1;
+                }
+            }
+            return -1;
         }
-        if (null != this.path) {
-            if (null != this.hostName && !this.path.isEmpty() && this.path.charAt(0) != '/') {
-                /* RFC 3986 section 3.3: If a URI contains an authority component, then the path component
-                   must either be empty or begin with a slash ("/") character. */
-                out.append('/');
+
+        private static UrlPath removeDotSegments(final UrlPath path) {
+            if (path == null) {
+                return null;
+            }
+            final List<String> segments = path.segments();
+            final List<String> ret = removeDotSegments(segments);
+            return ret == segments ? path : UrlPath.ofSegments(ret);
+        }
+
+        /// Removes the "." and ".." segments from a path, see RFC 3986 section 5.2.4. An absolute
+        /// path starts with an empty segment, its root, which ".." never removes. A dot segment
+        /// at the end leaves an empty last segment, that is a trailing slash.
+        static List<String> removeDotSegments(final List<String> segments) {
+            if (!segments.contains(".") && !segments.contains("..")) {
+                return segments;
+            }
+            final List<String> out = new ArrayList<>(segments.size());
+            for (int i = 0; i < segments.size(); i++) {
+                final String segment = segments.get(i);
+                if (segment.equals("..")) {
+                    if (out.size() > 1) {
+                        out.remove(out.size() - 1);
+                    } else if (out.size() == 1) {
+                        // removing the first segment of a relative path leaves just the slash after it
+                        out.set(0, "");
+                    }
+                } else if (!segment.equals(".")) {
+                    out.add(segment);
+                    continue;
+                }
+                if (i == segments.size() - 1) {
+                    out.add("");
+                }
             }
-            out.append(encoder.encodePath(this.path));
+            return out;
+        }
+    }
+
+    /// Appends the rendered URL, see [#toString()].
+    public void toString(final Appendable out) throws IOException {
+        out.append(toString());
+    }
+
+    /// Renders in two passes: first every component is encoded, or taken from the encoded-component
+    /// caches, then the pieces are concatenated in a single `+` expression. The JDK's string
+    /// concatenation sums the exact length, fills one `byte[]` and wraps it without copying, and as
+    /// the pieces are ASCII the result is stored compactly as Latin-1.
+    private String render() {
+        final UrlRenderEvent event = new UrlRenderEvent();
+        event.begin();
+        final MetricsListener metrics = Metrics.listener();
+        final long start = metrics == null ? 0 : System.nanoTime();
+        final String ret = concatenateParts();
+        if (metrics != null) {
+            metrics.record(MetricsListener.Operation.RENDER, ret.length(), System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.outputLength = ret.length();
+            event.parameterCount = queryParametersMultimap.size();
+            event.charset = encoder.charset().name();
+            event.commit();
+        }
+        return ret;
+    }
+
+    private String concatenateParts() {
+        final boolean hasScheme = null != this.scheme;
+        final boolean hasHost = null != this.hostName;
+        final boolean hasUserInfo = hasHost && null != this.userInfo;
+        final boolean hasPort = null != this.port;
+        final boolean hasPath = null != this.path;
+        /* RFC 3986 section 3.3: If a URI contains an authority component, then the path component
+           must either be empty or begin with a slash ("/") character. */
+        final boolean needsSlash = hasPath && hasHost && !this.path.isEmpty() && this.path.charAt(0) != '/';
+        final boolean hasQuery = !this.queryParametersMultimap.isEmpty();
+        final boolean hasFragment = null != this.fragment;
+        return (hasScheme ? this.scheme : "") + (hasScheme ? ":" : "")
+                + (hasHost ? "//" : "")
+                + (hasUserInfo ? encodedUserInfo() : "") + (hasUserInfo ? "@" : "")
+                + (hasHost ? asciiHostName() : "")
+                + (hasPort ? ":" : "") + (hasPort ? Integer.toString(this.port) : "")
+                + (needsSlash ? "/" : "") + (hasPath ? this.urlPath.encoded(encoder) : "")
+                + (hasQuery ? "?" : "") + (hasQuery ? encodedQuery() : "")
+                + (hasFragment ? "#" : "") + (hasFragment ? encodedFragment() : "");
+    }
+
+    private String encodedUserInfo() {
+        String ret = this.encodedUserInfo;
+        if (ret == null) {
+            ret = encoder.encodeUserInfo(this.userInfo);
+            this.encodedUserInfo = ret;
+        }
+        return ret;
+    }
+
+    /// The path as it is rendered, empty when there is none. A `/` inside a segment stays `%2F`.
+    String encodedPath() {
+        return this.urlPath == null ? "" : this.urlPath.encoded(encoder);
+    }
+
+    /// The decoder for [#encodedPath()], which is in the charset of the encoder.
+    Decoder pathDecoder() {
+        return Decoder.forCharset(encoder.charset());
+    }
+
+    private String asciiHostName() {
+        String ret = this.asciiHostName;
+        if (ret == null) {
+            ret = toAscii(this.hostName);
+            this.asciiHostName = ret;
+        }
+        return ret;
+    }
+
+    private String encodedQuery() {
+        String ret = this.encodedQuery;
+        if (ret == null) {
+            ret = encoder.encodeQueryParameters(queryParametersMultimap);
+            this.encodedQuery = ret;
         }
-        if (null != this.queryParametersMultimap && !this.queryParametersMultimap.isEmpty()) {
-            out.append('?');
-            out.append(encoder.encodeQueryParameters(queryParametersMultimap));
+        return ret;
+    }
+
+    private String encodedFragment() {
+        String ret = this.encodedFragment;
+        if (ret == null) {
+            ret = encoder.encodeFragment(this.fragment);
+            this.encodedFragment = ret;
+        }
+        return ret;
+    }
+
+    private static String toAscii(final String hostName) {
+        final MetricsListener metrics = Metrics.listener();
+        if (metrics == null) {
+            return IDN.toASCII(hostName);
         }
-        if (null != this.fragment) {
-            out.append('#');
-            out.append(encoder.encodeFragment(this.fragment));
+        final long start = System.nanoTime();
+        final String ret = IDN.toASCII(hostName);
+        metrics.record(MetricsListener.Operation.IDN_TO_ASCII, hostName.length(), System.nanoTime() - start);
+        return ret;
+    }
+
+    /// Decodes an internationalized host name the way [#withHost(String)] does.
+    static String toUnicode(final String hostName) {
+        final MetricsListener metrics = Metrics.listener();
+        if (metrics == null) {
+            return IDN.toUnicode(hostName);
         }
+        final long start = System.nanoTime();
+        final String ret = IDN.toUnicode(hostName);
+        metrics.record(MetricsListener.Operation.IDN_TO_UNICODE, hostName.length(), System.nanoTime() - start);
+        return ret;
     }
 
+    /// Renders the URL. The result is computed once, and cached.
     @Override
     public String toString() {
-        final StringBuilder sb = new StringBuilder();
-        try {
-            this.toString(sb);
-        } catch (final IOException ex) {
-            // will never happen, with StringBuilder
+        String rendered = this.rendered;
+        if (rendered == null) {
+            rendered = render();
+            this.rendered = rendered;
         }
-        return sb.toString();
+        return rendered;
     }
 
+    /// Converts to a [URI]. The result is computed once, and cached.
+    ///
+    /// The multi-argument [URI] constructors would quote every `%` in the already
+    /// encoded components, so the rendered form is parsed instead.
     public URI toUriWithException() throws URISyntaxException {
-        return new URI(this.toString());
+        URI uri = this.uri;
+        if (uri == null) {
+            uri = new URI(this.toString());
+            this.uri = uri;
+        }
+        return uri;
     }
 
     public URI toUri() throws RuntimeURISyntaxException {
@@ -345,7 +734,16 @@ public final class UrlBuilder {
         }
     }
 
+    /// Converts to a [URL], through the cached [URI] when possible.
     public URL toUrlWithException() throws MalformedURLException {
+        try {
+            final URI uri = toUriWithException();
+            if (uri.isAbsolute()) {
+                return uri.toURL();
+            }
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            // fall through, URL accepts some strings URI doesn't
+        }
         // Keep the deprecated URL constructor until there's a real solution
         // to the incompatibilities between URL and URI.
         return new URL(this.toString());
@@ -360,78 +758,81 @@ public final class UrlBuilder {
     }
 
     public UrlBuilder withDecoder(final Decoder decoder) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
     public UrlBuilder withEncoder(final Encoder encoder) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
     /**
      * When percent-escaping the StringBuilder's output, use this character set.
      */
     public UrlBuilder encodeAs(final Charset charset) {
-        final Encoder encoder = new Encoder(charset);
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        final Encoder encoder = Encoder.forCharset(charset);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
     /**
      * When percent-escaping the StringBuilder's output, use this character set.
      */
     public UrlBuilder encodeAs(final String charsetName) {
-        final Encoder encoder = new Encoder(Charset.forName(charsetName));
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        final Encoder encoder = Encoder.forCharset(charsetName);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
     /**
      * Set the protocol (or scheme), such as "http" or "https".
      */
     public UrlBuilder withScheme(final String scheme) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
     /**
      * Set the userInfo. It's usually either of the form "username" or "username:password".
      */
     public UrlBuilder withUserInfo(final String userInfo) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
     /**
      * Set the host name. Accepts internationalized host names, and decodes them.
      */
     public UrlBuilder withHost(final String name) {
-        final String hostName = IDN.toUnicode(name);
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        final String hostName = toUnicode(name);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
     /// Sets the port number.
     ///
     /// Use `null` to indicate the protocol's default port.
     public UrlBuilder withPort(final Integer port) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
     /**
      * Set the decoded, non-url-encoded path.
      */
     public UrlBuilder withPath(final String path) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, UrlPath.of(path), queryParametersMultimap, fragment);
     }
 
     /**
      * Decodes and sets the path from a url-encoded string.
      */
     public UrlBuilder withPath(final String path, final Charset encoding) {
-        final Decoder pathDecoder = new Decoder(encoding);
-        return of(decoder, encoder, scheme, userInfo, hostName, port, pathDecoder.decodePath(path), queryParametersMultimap, fragment);
+        final Decoder pathDecoder = Decoder.forCharset(encoding);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, pathDecoder.decodePathSegments(path),
+                queryParametersMultimap, fragment);
     }
 
     /**
      * Decodes and sets the path from a url-encoded string.
      */
     public UrlBuilder withPath(final String path, final String encoding) {
-        return withPath(path, Charset.forName(encoding));
+        final Decoder pathDecoder = Decoder.forCharset(encoding);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, pathDecoder.decodePathSegments(path),
+                queryParametersMultimap, fragment);
     }
 
     /// Sets the query parameters to a deep copy of the specified parameters.
@@ -446,37 +847,128 @@ public final class UrlBuilder {
         } else {
             q = query.deepCopy();
         }
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, q, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, q, fragment);
     }
 
     /**
      * Decodes the input string, and sets the query string.
      */
     public UrlBuilder withQuery(final String query) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, decoder.parseQueryString(query), fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, decoder.parseQueryString(query), fragment);
     }
 
     /**
      * Decodes the input string, and sets the query string.
      */
     public UrlBuilder withQuery(final String query, final Charset encoding) {
-        final Decoder queryDecoder = new Decoder(encoding);
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryDecoder.parseQueryString(query), fragment);
+        final Decoder queryDecoder = Decoder.forCharset(encoding);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryDecoder.parseQueryString(query), fragment);
     }
 
     /**
      * Sets the parameters.
      */
     public UrlBuilder withParameters(final UrlParameterMultimap parameters) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, parameters, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, parameters, fragment);
     }
 
     /**
      * Adds a query parameter. New parameters are added to the end of the query string.
      */
     public UrlBuilder addParameter(final String key, final String value) {
-        final UrlParameterMultimap qp = queryParametersMultimap.deepCopy().add(key, value);
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, qp, fragment);
+        return withAppendedParameters(queryParametersMultimap.deepCopy().add(key, value));
+    }
+
+    /// Adds all the values for each key, in the map's iteration order, to the end of the
+    /// query string. The parameters are copied once, however many are added.
+    public UrlBuilder addParameters(final Map<String, ? extends Collection<String>> parameters) {
+        final UrlParameterMultimap qp = queryParametersMultimap.deepCopy();
+        for (final Map.Entry<String, ? extends Collection<String>> e : parameters.entrySet()) {
+            for (final String value : e.getValue()) {
+                qp.add(e.getKey(), value);
+            }
+        }
+        return withAppendedParameters(qp);
+    }
+
+    /// Replaces the values of each key in the map, like [#setParameter(String, String)] does for one:
+    /// existing parameters with these keys are removed, and the new values added to the end of the
+    /// query string. The parameters are copied once, however many are replaced.
+    public UrlBuilder setParameters(final Map<String, ? extends Collection<String>> parameters) {
+        final UrlParameterMultimap qp = queryParametersMultimap.deepCopy()
+                .removeIf((key, value) -> parameters.containsKey(key));
+        for (final Map.Entry<String, ? extends Collection<String>> e : parameters.entrySet()) {
+            for (final String value : e.getValue()) {
+                qp.add(e.getKey(), value);
+            }
+        }
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, qp, fragment);
+    }
+
+    /// Removes every query parameter whose key and value match the predicate, in one pass,
+    /// testing each parameter once. The value is null for parameters without one. The parameters
+    /// are only copied from the first match on, and this builder is returned if none match.
+    public UrlBuilder removeParametersIf(final BiPredicate<String, String> predicate) {
+        final List<Map.Entry<String, String>> entries = queryParametersMultimap.flatEntryList();
+        UrlParameterMultimap qp = null;
+        int index = 0;
+        for (final Map.Entry<String, String> e : entries) {
+            if (predicate.test(e.getKey(), e.getValue())) {
+                if (qp == null) {
+                    qp = newMultimap();
+                    for (final Map.Entry<String, String> kept : entries.subList(0, index)) {
+                        qp.add(kept.getKey(), kept.getValue());
+                    }
+                }
+            } else if (qp != null) {
+                qp.add(e.getKey(), e.getValue());
+            }
+            index++;
+        }
+        return qp == null ? this : derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, qp, fragment);
+    }
+
+    /// Adds the key and value pairs of the other multimap, in its order, to the end of the query
+    /// string, skipping pairs this builder already has. Repeated pairs of the other multimap are
+    /// all added, unless this builder has them. The other multimap is read in one pass, without
+    /// handing out its pairs, and this builder's parameters are copied once, if anything is added.
+    public UrlBuilder mergeParameters(final UrlParameterMultimap parameters) {
+        final Set<Map.Entry<String, String>> existing = new HashSet<>(queryParametersMultimap.flatEntryList());
+        final List<Map.Entry<String, String>> added = new ArrayList<>();
+        parameters.forEachPair((key, value) -> {
+            final Map.Entry<String, String> e = new AbstractMap.SimpleImmutableEntry<>(key, value);
+            if (!existing.contains(e)) {
+                added.add(e);
+            }
+        });
+        if (added.isEmpty()) {
+            return this;
+        }
+        final UrlParameterMultimap qp = queryParametersMultimap.deepCopy();
+        for (final Map.Entry<String, String> e : added) {
+            qp.add(e.getKey(), e.getValue());
+        }
+        return withAppendedParameters(qp);
+    }
+
+    /// Derives a builder with `qp`, which is this builder's parameters with more appended,
+    /// encoding only the appended ones when this builder's query has already been encoded.
+    private UrlBuilder withAppendedParameters(final UrlParameterMultimap qp) {
+        final int existing = queryParametersMultimap.size();
+        if (qp.size() == existing) {
+            return this;
+        }
+        final UrlBuilder ret = derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, qp, fragment);
+        final String encodedPrefix = this.encodedQuery;
+        if (encodedPrefix != null) {
+            final StringBuilder sb = new StringBuilder(encodedPrefix);
+            final List<Map.Entry<String, String>> entries = ret.queryParametersMultimap.flatEntryList();
+            for (final Map.Entry<String, String> e : entries.subList(existing, entries.size())) {
+                sb.append('&').append(encoder.encodeQueryParameter(e.getKey(), e.getValue()));
+            }
+            ret.encodedQuery = sb.toString();
+        }
+        return ret;
     }
 
     /**
@@ -485,7 +977,7 @@ public final class UrlBuilder {
      */
     public UrlBuilder setParameter(final String key, final String value) {
         final UrlParameterMultimap qp = queryParametersMultimap.deepCopy().replaceValues(key, value);
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, qp, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, qp, fragment);
     }
 
     /**
@@ -493,7 +985,7 @@ public final class UrlBuilder {
      */
     public UrlBuilder removeParameter(final String key, final String value) {
         final UrlParameterMultimap qp = queryParametersMultimap.deepCopy().remove(key, value);
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, qp, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, qp, fragment);
     }
 
     /**
@@ -501,35 +993,45 @@ public final class UrlBuilder {
      */
     public UrlBuilder removeParameters(final String key) {
         final UrlParameterMultimap qp = queryParametersMultimap.deepCopy().removeAllValues(key);
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, qp, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, qp, fragment);
+    }
+
+    /// Removes the query parameters whose key matches the filter, see
+    /// [#removeParametersIf(BiPredicate)].
+    public UrlBuilder removeParameters(final ParameterFilter filter) {
+        return removeParametersIf((key, value) -> filter.matches(key));
     }
 
     /**
      * Sets the fragment/anchor.
      */
     public UrlBuilder withFragment(final String fragment) {
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, urlPath, queryParametersMultimap, fragment);
     }
 
-    /**
-     * Add URI path segments.
-     */
+    /// Adds URI path segments. Each argument may contain several segments separated by `/`,
+    /// and exactly one slash is kept between the existing path and the added one.
+    /// Empty arguments are ignored.
     public UrlBuilder addPathSegments(final String ... pathSegments) {
-        final StringBuilder sb = new StringBuilder(this.path);
-        for (final String p : pathSegments) {
-            final char lastChar = sb.charAt(sb.length() - 1);
-            final char firstChar = p.charAt(0);
-            if ('/' == lastChar && '/' == firstChar) {
-                sb.append(p.substring(1));
-            } else if ('/' == lastChar || '/' == firstChar) {
-                sb.append(p);
-            } else {
-                sb.append('/');
-                sb.append(p);
-            }
+        UrlPath p = this.urlPath == null ? UrlPath.empty() : this.urlPath;
+        for (final String segment : pathSegments) {
+            p = p.appendPath(segment);
         }
-        final String path = sb.toString();
-        return of(decoder, encoder, scheme, userInfo, hostName, port, path, queryParametersMultimap, fragment);
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, p, queryParametersMultimap, fragment);
+    }
+
+    /// Adds a single decoded path segment, taken literally: a `/` in it is encoded as `%2F`.
+    /// The existing path segments are shared, not copied.
+    public UrlBuilder addPathSegment(final String segment) {
+        final UrlPath p = this.urlPath == null ? UrlPath.empty() : this.urlPath;
+        return derive(decoder, encoder, scheme, userInfo, hostName, port, p.append(segment),
+                queryParametersMultimap, fragment);
+    }
+
+    /// The decoded path segments, see [UrlPath#segments()]. Unlike [#path], keeps a segment with
+    /// an encoded `%2F` in one piece. Empty when there is no path.
+    public List<String> pathSegments() {
+        return this.urlPath == null ? List.of() : this.urlPath.segments();
     }
 
 }
@@ -0,0 +1,205 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// A bounded cache of parsed [UrlBuilder]s, keyed by the input string and its charset.
+///
+/// Builders are immutable, so one parsed instance can be handed to every caller of the same input.
+/// Lookups are lock-free; a miss parses outside of any lock, and only inserting takes a lock, to
+/// evict with the CLOCK (second chance) policy: entries hit since the clock hand last passed them
+/// survive another round. Inputs which fail to parse are never cached.
+///
+/// Bound it either by the number of entries, or by weight, where an entry weighs the length of
+/// its input string.
+public final class UrlBuilderCache {
+
+    private record Key(String input, Charset charset) { }
+
+    private static final class Node {
+        final Key key;
+        final UrlBuilder value;
+        final int weight;
+        /// Set on every hit, cleared by the clock hand. Plain field, a lost update only costs a
+        /// second chance.
+        boolean referenced;
+
+        Node(final Key key, final UrlBuilder value, final int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final ConcurrentMap<Key, Node> map = new ConcurrentHashMap<>();
+
+    /// The clock, with the hand at the head. Guarded by [#lock].
+    private final ArrayDeque<Node> clock = new ArrayDeque<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final long maximumSize;
+
+    private final long maximumWeight;
+
+    /// Guarded by [#lock].
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private UrlBuilderCache(final long maximumSize, final long maximumWeight) {
+        if (maximumSize < 0 || maximumWeight < 0) {
+            throw new IllegalArgumentException("cache bounds can't be negative");
+        }
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+    }
+
+    /// A cache holding at most `maximumSize` parsed builders.
+    public static UrlBuilderCache withMaximumSize(final long maximumSize) {
+        return new UrlBuilderCache(maximumSize, Long.MAX_VALUE);
+    }
+
+    /// A cache holding parsed builders whose input strings total at most `maximumWeight` chars.
+    public static UrlBuilderCache withMaximumWeight(final long maximumWeight) {
+        return new UrlBuilderCache(Long.MAX_VALUE, maximumWeight);
+    }
+
+    /// Like [UrlBuilder#fromString(String)], returning the cached instance for a repeated input.
+    public UrlBuilder fromString(final String url) {
+        return fromString(url, StandardCharsets.UTF_8);
+    }
+
+    /// Like [UrlBuilder#fromString(String, Charset)], returning the cached instance for a repeated input.
+    public UrlBuilder fromString(final String url, final Charset inputEncoding) {
+        final Key key = new Key(url, inputEncoding);
+        final UrlBuilder cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return put(key, UrlBuilder.fromString(url, Decoder.forCharset(inputEncoding)));
+    }
+
+    /// Like [UrlBuilder#tryParse(String)], returning the cached instance for a repeated valid input.
+    public ParseResult tryParse(final String url) {
+        return tryParse(url, StandardCharsets.UTF_8);
+    }
+
+    /// Like [UrlBuilder#tryParse(String, Charset)], returning the cached instance for a repeated valid input.
+    public ParseResult tryParse(final String url, final Charset inputEncoding) {
+        final Key key = new Key(url, inputEncoding);
+        final UrlBuilder cached = get(key);
+        if (cached != null) {
+            return ParseResult.success(cached);
+        }
+        final ParseResult result = UrlBuilder.tryParse(url, inputEncoding);
+        return result.isValid() ? ParseResult.success(put(key, result.builder())) : result;
+    }
+
+    private UrlBuilder get(final Key key) {
+        final Node node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    private UrlBuilder put(final Key key, final UrlBuilder value) {
+        final Node node = new Node(key, value, key.input().length());
+        if (node.weight > maximumWeight || maximumSize == 0) {
+            return value;
+        }
+        final Node existing = map.putIfAbsent(key, node);
+        if (existing != null) {
+            return existing.value;
+        }
+        lock.lock();
+        try {
+            clock.addLast(node);
+            weight += node.weight;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+        return value;
+    }
+
+    /// Advances the clock hand until the cache is within bounds again.
+    private void evict() {
+        while (clock.size() > maximumSize || weight > maximumWeight) {
+            final Node node = clock.pollFirst();
+            if (node.referenced) {
+                node.referenced = false;
+                clock.addLast(node);
+            } else {
+                map.remove(node.key, node);
+                weight -= node.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    /// Removes every entry. The counters are not reset.
+    public void clear() {
+        lock.lock();
+        try {
+            clock.clear();
+            map.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /// The number of cached builders.
+    public int size() {
+        return map.size();
+    }
+
+    /// Lookups which found a cached builder.
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /// Lookups which had to parse the input.
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /// Builders evicted to stay within the bounds.
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+}
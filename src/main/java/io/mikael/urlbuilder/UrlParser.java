@@ -0,0 +1,268 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import io.mikael.urlbuilder.util.Encoder;
+import io.mikael.urlbuilder.util.ParameterFilter;
+import io.mikael.urlbuilder.util.UrlParameterMultimap;
+import io.mikael.urlbuilder.util.UrlPath;
+
+/// The parser behind [UrlBuilder#fromString(String, Decoder)] and [UrlBuilder#tryParse(String, Decoder)].
+///
+/// Works on offsets into any [CharSequence], decoding components straight from the input
+/// range without copying it first. Validates every component before decoding it, so that
+/// invalid input is reported through [#error()] and [#errorOffset()] instead of an exception.
+/// The user info is decoded with [Decoder#decodeUserInfo(String)], and the path and query with
+/// [Decoder#urlDecode(CharSequence, int, int, boolean)], so a decoder overriding those, or
+/// [Decoder#urlDecode(String, boolean)], decodes every component.
+/// An instance parses one input and is not thread-safe.
+final class UrlParser {
+
+    private final Decoder decoder;
+
+    private final Encoder encoder;
+
+    /// Query parameters dropped while parsing, or null.
+    private final ParameterFilter excludedParameters;
+
+    private ParseResult.Error error;
+
+    private int errorOffset = -1;
+
+    private String scheme;
+
+    private String userInfo;
+
+    private String hostName;
+
+    private Integer port;
+
+    private String fragment;
+
+    private int queryStart = -1;
+
+    private int queryEnd = -1;
+
+    UrlParser(final Decoder decoder, final Encoder encoder) {
+        this(decoder, encoder, null);
+    }
+
+    UrlParser(final Decoder decoder, final Encoder encoder, final ParameterFilter excludedParameters) {
+        this.decoder = decoder;
+        this.encoder = encoder;
+        this.excludedParameters = excludedParameters;
+    }
+
+    ParseResult.Error error() {
+        return error;
+    }
+
+    int errorOffset() {
+        return errorOffset;
+    }
+
+    /// The exception [UrlBuilder#fromString(String, Decoder)] has always thrown for the current error.
+    IllegalArgumentException exception(final CharSequence input) {
+        switch (error) {
+            case INVALID_PERCENT_ENCODING:
+                return new NumberFormatException("Invalid percent-encoding at offset " + errorOffset
+                        + ": " + input.subSequence(errorOffset, Math.min(input.length(), errorOffset + 3)));
+            case INVALID_PORT:
+                return new NumberFormatException("Invalid port at offset " + errorOffset);
+            default:
+                return new IllegalArgumentException("Unclosed IPv6 literal at offset " + errorOffset);
+        }
+    }
+
+    /// Parses `input[start, end)`, returning null and recording the error if it is invalid.
+    UrlBuilder parse(final CharSequence input, int start, int end) {
+        end = splitFragmentAndQuery(input, start, end);
+
+        final int firstColon = indexOf(input, ':', start, end); // either for schema, password or port
+        final int firstSlash = indexOf(input, '/', start, end);
+        if (firstColon != -1 && (firstSlash == -1 || firstColon < firstSlash)) {
+            scheme = input.subSequence(start, firstColon).toString();
+            start = firstColon + 1;
+        }
+
+        if (end - start >= 2 && input.charAt(start) == '/' && input.charAt(start + 1) == '/') {
+            final int nextSlash = indexOf(input, '/', start + 2, end);
+            final int authorityEnd = nextSlash != -1 ? nextSlash : end;
+            if (!parseAuthority(input, start + 2, authorityEnd)) {
+                return null;
+            }
+            start = authorityEnd;
+        }
+        return parsePathAndQuery(input, start, end);
+    }
+
+    /// Parses an HTTP request-target (RFC 9112 section 3.2), picking the form from its shape:
+    /// origin-form starts with `/`, asterisk-form is a lone `*` (kept as the path), authority-form
+    /// is `host:port` with nothing else, and anything else is parsed as absolute-form.
+    UrlBuilder parseRequestTarget(final CharSequence input, final int start, final int end) {
+        if (start == end || input.charAt(start) == '/') {
+            return parseOriginForm(input, start, end);
+        } else if (end - start == 1 && input.charAt(start) == '*') {
+            return UrlBuilder.of(decoder, encoder, null, null, null, null, "*",
+                    decoder.parseQueryString(null), null);
+        } else if (isAuthorityForm(input, start, end)) {
+            return parseAuthorityForm(input, start, end);
+        }
+        return parse(input, start, end);
+    }
+
+    private static boolean isAuthorityForm(final CharSequence input, final int start, final int end) {
+        int lastColon = -1;
+        for (int i = start; i < end; i++) {
+            final char c = input.charAt(i);
+            if (c == '/' || c == '?' || c == '#' || c == '@') {
+                return false;
+            } else if (c == ':') {
+                lastColon = i;
+            }
+        }
+        if (lastColon == -1) {
+            return false;
+        }
+        for (int i = lastColon + 1; i < end; i++) {
+            if (input.charAt(i) < '0' || input.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /// Parses an origin-form request-target, `absolute-path [ "?" query ]`, where even a leading
+    /// `//` belongs to the path.
+    UrlBuilder parseOriginForm(final CharSequence input, final int start, final int end) {
+        return parsePathAndQuery(input, start, splitFragmentAndQuery(input, start, end));
+    }
+
+    /// Parses an authority-form request-target, `host ":" port`, as sent with `CONNECT`.
+    UrlBuilder parseAuthorityForm(final CharSequence input, final int start, final int end) {
+        if (!parseAuthority(input, start, end)) {
+            return null;
+        }
+        return UrlBuilder.of(decoder, encoder, null, userInfo, hostName, port, "",
+                decoder.parseQueryString(null), null);
+    }
+
+    /// Records the fragment and the query range, returning where the part before them ends.
+    private int splitFragmentAndQuery(final CharSequence input, final int start, int end) {
+        final int firstPound = indexOf(input, '#', start, end);
+        if (firstPound != -1) {
+            fragment = firstPound + 1 < end ? input.subSequence(firstPound + 1, end).toString() : null;
+            end = firstPound;
+        }
+
+        final int firstQuestionMark = indexOf(input, '?', start, end);
+        if (firstQuestionMark != -1) {
+            if (firstQuestionMark + 1 < end) {
+                queryStart = firstQuestionMark + 1;
+                queryEnd = end;
+            }
+            end = firstQuestionMark;
+        }
+        return end;
+    }
+
+    private UrlBuilder parsePathAndQuery(final CharSequence input, final int start, final int end) {
+        if (!valid(decoder.indexOfInvalidEscapeInPath(input, start, end), ParseResult.Error.INVALID_PERCENT_ENCODING)) {
+            return null;
+        }
+        if (queryStart != -1 && !valid(decoder.indexOfInvalidEscapeInQuery(input, queryStart, queryEnd),
+                ParseResult.Error.INVALID_PERCENT_ENCODING)) {
+            return null;
+        }
+
+        final UrlPath path = decoder.decodePathSegments(input, start, end);
+        final UrlParameterMultimap query = queryStart != -1
+                ? decoder.parseQueryString(input, queryStart, queryEnd, excludedParameters)
+                : decoder.parseQueryString(null);
+        return UrlBuilder.of(decoder, encoder, scheme, userInfo, hostName, port, path, query, fragment);
+    }
+
+    private boolean parseAuthority(final CharSequence input, int start, final int end) {
+        final int firstAtSign = indexOf(input, '@', start, end);
+        // username (':' password)? '@'
+        if (firstAtSign != -1) {
+            if (!valid(decoder.indexOfInvalidEscape(input, start, firstAtSign),
+                    ParseResult.Error.INVALID_PERCENT_ENCODING)) {
+                return false;
+            }
+            userInfo = decoder.decodeUserInfo(input.subSequence(start, firstAtSign).toString());
+            start = firstAtSign + 1;
+        }
+
+        // [IPv6] | IPv4 | hostname
+        final int squareBracketOpen = indexOf(input, '[', start, end);
+        if (squareBracketOpen != -1) {
+            final int squareBracketClosed = indexOf(input, ']', squareBracketOpen, end);
+            if (squareBracketClosed == -1) {
+                return valid(squareBracketOpen, ParseResult.Error.UNCLOSED_IP_LITERAL);
+            }
+            hostName = input.subSequence(squareBracketOpen, squareBracketClosed + 1).toString();
+            start = squareBracketClosed + 1;
+        } else {
+            final int colon = indexOf(input, ':', start, end);
+            final int hostEnd = colon != -1 ? colon : end;
+            hostName = input.subSequence(start, hostEnd).toString();
+            start = hostEnd;
+        }
+
+        // ':' port, where whatever follows the host is taken to start with the colon
+        return start >= end || parsePort(input, start + 1, end);
+    }
+
+    private boolean parsePort(final CharSequence input, final int start, final int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            final char c = input.charAt(i);
+            if (c < '0' || c > '9') {
+                return valid(i, ParseResult.Error.INVALID_PORT);
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                return valid(start, ParseResult.Error.INVALID_PORT);
+            }
+        }
+        if (start < end) {
+            port = (int) value;
+        }
+        return true;
+    }
+
+    /// Records `kind` at `offset` unless the offset is -1.
+    private boolean valid(final int offset, final ParseResult.Error kind) {
+        if (offset == -1) {
+            return true;
+        }
+        error = kind;
+        errorOffset = offset;
+        return false;
+    }
+
+    private static int indexOf(final CharSequence input, final char c, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (input.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,429 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.ParameterFilter;
+import io.mikael.urlbuilder.util.UrlParameterMultimap;
+import io.mikael.urlbuilder.util.UrlPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/// Rewrites URLs by the first of many rules whose conditions match them.
+///
+/// A rule may require a host, a path prefix and any number of query parameters, and changes the
+/// URL with its actions when it matches. Rules are compiled into indexes instead of being tried
+/// one after another: a hash from the lower-cased host to a char trie of path prefixes, plus one
+/// such trie for the rules without a host. Matching walks the path through the trie for the
+/// URL's host and the one for any host, and only checks the parameter conditions of the rules
+/// met on the way, so its cost depends on the length of the path and on how many rules share
+/// its prefixes, but not on the number of rules overall.
+///
+/// The actions of the matching rule are applied to one draft of the URL, which becomes a new
+/// `UrlBuilder` once, copying the query parameters at most once. Rewriters are immutable and
+/// thread-safe.
+///
+/// ```java
+/// UrlRewriter rewriter = UrlRewriter.builder()
+///         .add(UrlRewriter.rule().host("a.example.com").pathPrefix("/old/")
+///                 .setHost("c.example.com").replacePathPrefix("/new/").addParameter("moved", "1"))
+///         .build();
+/// UrlBuilder rewritten = rewriter.rewrite(UrlBuilder.fromString("https://a.example.com/old/x"));
+/// ```
+public final class UrlRewriter {
+
+    private final Rule[] rules;
+
+    private final Map<String, PrefixNode> byHost;
+
+    /// The rules for any host, or null.
+    private final PrefixNode anyHost;
+
+    private UrlRewriter(final Rule[] rules, final Map<String, PrefixNode> byHost, final PrefixNode anyHost) {
+        this.rules = rules;
+        this.byHost = byHost;
+        this.anyHost = anyHost;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /// Starts a rule, which matches every URL until conditions are added to it.
+    public static Rule rule() {
+        return new Rule();
+    }
+
+    /// The number of rules.
+    public int size() {
+        return rules.length;
+    }
+
+    /// The index of the first rule, in the order they were added, that matches the URL, or -1.
+    public int match(final UrlBuilder url) {
+        int best = Integer.MAX_VALUE;
+        if (url.hostName != null && !byHost.isEmpty()) {
+            final PrefixNode root = byHost.get(url.hostName.toLowerCase(Locale.ROOT));
+            if (root != null) {
+                best = match(root, url, best);
+            }
+        }
+        if (anyHost != null) {
+            best = match(anyHost, url, best);
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    /// Walks the path through the trie, trying the rules of each prefix met on the way that come
+    /// before the best match so far.
+    private int match(final PrefixNode root, final UrlBuilder url, int best) {
+        final String path = url.path == null ? "" : url.path;
+        PrefixNode node = root;
+        for (int i = 0; node != null; i++) {
+            for (final int rule : node.rules) {
+                if (rule >= best) {
+                    break;
+                }
+                if (rules[rule].parametersMatch(url)) {
+                    best = rule;
+                    break;
+                }
+            }
+            node = i < path.length() ? node.next(path.charAt(i)) : null;
+        }
+        return best;
+    }
+
+    /// Applies the first matching rule, returning the URL itself when none matches.
+    public UrlBuilder rewrite(final UrlBuilder url) {
+        final int rule = match(url);
+        return rule == -1 ? url : rules[rule].apply(url);
+    }
+
+    /// Collects rules, which take precedence in the order they are added.
+    public static final class Builder {
+
+        private final List<Rule> rules = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /// Adds a copy of the rule, so the same one can be changed and added again.
+        public Builder add(final Rule rule) {
+            rules.add(rule.copy());
+            return this;
+        }
+
+        public UrlRewriter build() {
+            final Map<String, MutableNode> byHost = new HashMap<>();
+            MutableNode anyHost = null;
+            for (int i = 0; i < rules.size(); i++) {
+                final Rule rule = rules.get(i);
+                final MutableNode root;
+                if (rule.host == null) {
+                    root = anyHost != null ? anyHost : (anyHost = new MutableNode());
+                } else {
+                    root = byHost.computeIfAbsent(rule.host, h -> new MutableNode());
+                }
+                root.insert(rule.pathPrefix).rules.add(i);
+            }
+            final Map<String, PrefixNode> hosts = new HashMap<>(Math.max(16, byHost.size() * 2));
+            byHost.forEach((host, node) -> hosts.put(host, node.freeze()));
+            return new UrlRewriter(rules.toArray(new Rule[0]), hosts, anyHost == null ? null : anyHost.freeze());
+        }
+
+    }
+
+    /// The conditions and actions of a rule. Conditions are all required, and actions are applied
+    /// in the order they are added.
+    public static final class Rule {
+
+        private String host;
+
+        private String pathPrefix = "";
+
+        private final List<ParameterCondition> parameters = new ArrayList<>();
+
+        private final List<Action> actions = new ArrayList<>();
+
+        private Rule() {
+        }
+
+        private Rule copy() {
+            final Rule ret = new Rule();
+            ret.host = host;
+            ret.pathPrefix = pathPrefix;
+            ret.parameters.addAll(parameters);
+            ret.actions.addAll(actions);
+            return ret;
+        }
+
+        /// Requires the host name, compared without regard to case.
+        public Rule host(final String host) {
+            this.host = host.toLowerCase(Locale.ROOT);
+            return this;
+        }
+
+        /// Requires the decoded path to start with the prefix.
+        public Rule pathPrefix(final String prefix) {
+            this.pathPrefix = Objects.requireNonNull(prefix);
+            return this;
+        }
+
+        /// Requires the query parameter, with any value.
+        public Rule hasParameter(final String key) {
+            return parameter(key, value -> true);
+        }
+
+        /// Requires the query parameter with the value.
+        public Rule parameter(final String key, final String value) {
+            return parameter(key, v -> Objects.equals(v, value));
+        }
+
+        /// Requires the query parameter with at least one value the predicate accepts. A key
+        /// without a value has the value null.
+        public Rule parameter(final String key, final Predicate<String> value) {
+            parameters.add(new ParameterCondition(key, value));
+            return this;
+        }
+
+        public Rule setScheme(final String scheme) {
+            actions.add(draft -> draft.scheme = scheme);
+            return this;
+        }
+
+        /// Sets the host name, decoded once here the way [UrlBuilder#withHost(String)] decodes it.
+        public Rule setHost(final String hostName) {
+            final String decoded = hostName == null ? null : UrlBuilder.toUnicode(hostName);
+            actions.add(draft -> draft.hostName = decoded);
+            return this;
+        }
+
+        public Rule setPort(final Integer port) {
+            actions.add(draft -> draft.port = port);
+            return this;
+        }
+
+        /// Replaces the path.
+        public Rule setPath(final String path) {
+            final UrlPath replacement = UrlPath.of(path);
+            actions.add(draft -> draft.path = replacement);
+            return this;
+        }
+
+        /// Replaces the prefix the rule requires with another one, keeping the rest of the path. The
+        /// prefix is the one the rule has when it is applied, wherever [#pathPrefix(String)] is
+        /// called. The slashes of the replacement separate segments, while the segments of the
+        /// rest of the path are kept as they are, even when they contain a `/`.
+        public Rule replacePathPrefix(final String replacement) {
+            final List<String> replacementSegments = UrlPath.of(replacement).segments();
+            actions.add(draft -> {
+                final String path = draft.path == null ? "" : draft.path.toString();
+                if (path.startsWith(draft.pathPrefix)) {
+                    draft.path = replacePrefix(draft.path, draft.pathPrefix.length(), replacementSegments);
+                }
+            });
+            return this;
+        }
+
+        /// Replaces the first `prefixLength` chars of the decoded path, which may end inside a
+        /// segment, with the segments of the replacement.
+        private static UrlPath replacePrefix(final UrlPath path, final int prefixLength,
+                                             final List<String> replacement) {
+            final List<String> segments = path == null ? List.of("") : path.segments();
+            int segment = 0;
+            int start = 0;
+            while (prefixLength > start + segments.get(segment).length()) {
+                start += segments.get(segment).length() + 1;
+                segment++;
+            }
+            final List<String> ret = new ArrayList<>(replacement.size() + segments.size() - segment);
+            ret.addAll(replacement);
+            ret.set(ret.size() - 1, ret.get(ret.size() - 1) + segments.get(segment).substring(prefixLength - start));
+            ret.addAll(segments.subList(segment + 1, segments.size()));
+            return UrlPath.ofSegments(ret);
+        }
+
+        public Rule addParameter(final String key, final String value) {
+            actions.add(draft -> draft.parameters().add(key, value));
+            return this;
+        }
+
+        /// Replaces all values of the key with the value.
+        public Rule setParameter(final String key, final String value) {
+            actions.add(draft -> draft.parameters().replaceValues(key, value));
+            return this;
+        }
+
+        public Rule removeParameters(final String key) {
+            actions.add(draft -> draft.parameters().removeAllValues(key));
+            return this;
+        }
+
+        public Rule removeParameters(final ParameterFilter filter) {
+            actions.add(draft -> draft.parameters().removeIf((key, value) -> filter.matches(key)));
+            return this;
+        }
+
+        public Rule setFragment(final String fragment) {
+            actions.add(draft -> draft.fragment = fragment);
+            return this;
+        }
+
+        private boolean parametersMatch(final UrlBuilder url) {
+            for (final ParameterCondition condition : parameters) {
+                if (!condition.matches(url.queryParametersMultimap)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private UrlBuilder apply(final UrlBuilder url) {
+            final Draft draft = new Draft(url, pathPrefix);
+            for (final Action action : actions) {
+                action.apply(draft);
+            }
+            return url.derive(draft.scheme, draft.hostName, draft.port, draft.path,
+                    draft.parameters != null ? draft.parameters : url.queryParametersMultimap, draft.fragment);
+        }
+
+    }
+
+    private record ParameterCondition(String key, Predicate<String> value) {
+
+        boolean matches(final UrlParameterMultimap parameters) {
+            return parameters.anyValue(key, value);
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface Action {
+
+        void apply(Draft draft);
+
+    }
+
+    /// The components of the URL being rewritten. The parameters are copied on the first change.
+    private static final class Draft {
+
+        private final UrlBuilder url;
+
+        /// The path prefix of the rule being applied.
+        private final String pathPrefix;
+
+        private String scheme;
+
+        private String hostName;
+
+        private Integer port;
+
+        private UrlPath path;
+
+        private String fragment;
+
+        private UrlParameterMultimap parameters;
+
+        private Draft(final UrlBuilder url, final String pathPrefix) {
+            this.url = url;
+            this.pathPrefix = pathPrefix;
+            this.scheme = url.scheme;
+            this.hostName = url.hostName;
+            this.port = url.port;
+            this.path = url.urlPath;
+            this.fragment = url.fragment;
+        }
+
+        private UrlParameterMultimap parameters() {
+            if (parameters == null) {
+                parameters = url.queryParametersMultimap.deepCopy();
+            }
+            return parameters;
+        }
+
+    }
+
+    /// A path prefix trie node with the rules, in ascending order, whose prefix ends here.
+    private static final class PrefixNode {
+
+        private static final int[] NO_RULES = {};
+
+        private final char[] chars;
+
+        private final PrefixNode[] next;
+
+        private final int[] rules;
+
+        private PrefixNode(final char[] chars, final PrefixNode[] next, final int[] rules) {
+            this.chars = chars;
+            this.next = next;
+            this.rules = rules;
+        }
+
+        PrefixNode next(final char c) {
+            final int i = chars.length < 8 ? linearSearch(c) : Arrays.binarySearch(chars, c);
+            return i < 0 ? null : next[i];
+        }
+
+        private int linearSearch(final char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    private static final class MutableNode {
+
+        private final TreeMap<Character, MutableNode> children = new TreeMap<>();
+
+        private final List<Integer> rules = new ArrayList<>();
+
+        MutableNode insert(final String prefix) {
+            MutableNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new MutableNode());
+            }
+            return node;
+        }
+
+        PrefixNode freeze() {
+            final char[] chars = new char[children.size()];
+            final PrefixNode[] next = new PrefixNode[children.size()];
+            int i = 0;
+            for (final Map.Entry<Character, MutableNode> e : children.entrySet()) {
+                chars[i] = e.getKey();
+                next[i++] = e.getValue().freeze();
+            }
+            final int[] ruleIndexes = rules.isEmpty() ? PrefixNode.NO_RULES
+                    : rules.stream().mapToInt(Integer::intValue).toArray();
+            return new PrefixNode(chars, next, ruleIndexes);
+        }
+
+    }
+
+}
@@ -0,0 +1,453 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/// An immutable, sorted set of URLs, stored with front coding.
+///
+/// URLs are kept in their rendered form, that of [UrlBuilder#toString()], as UTF-8 bytes,
+/// ordered by unsigned byte value. The string lookups compare the given string as it is, so they
+/// find a URL by its rendered form, while the [UrlBuilder] ones render the builder first.
+/// Entries are grouped into blocks of [#BLOCK_SIZE]. The first entry of every block is
+/// stored whole, and every following entry only as the length of the prefix it shares
+/// with its predecessor, plus the remaining suffix. Long runs of URLs that share a
+/// scheme, host and path prefix compress to a few bytes each.
+///
+/// Lookups binary search the block heads, then decode at most one block. Iteration
+/// decodes entries sequentially, and only creates a [UrlBuilder] when asked for one.
+///
+/// Instances are thread-safe.
+public final class UrlStore implements Iterable<UrlBuilder> {
+
+    /// Number of entries in a front-coded block.
+    public static final int BLOCK_SIZE = 16;
+
+    private static final int PAGE_SIZE = 1 << 22;
+
+    private final byte[][] pages;
+
+    /// Page index in the high, and page offset in the low 32 bits.
+    private final long[] blocks;
+
+    private final int size;
+
+    private final int maxLength;
+
+    private UrlStore(final byte[][] pages, final long[] blocks, final int size, final int maxLength) {
+        this.pages = pages;
+        this.blocks = blocks;
+        this.size = size;
+        this.maxLength = maxLength;
+    }
+
+    /// Builds a store from the given URL strings, in any order. Each is parsed and stored in its
+    /// rendered form, so URLs which render the same, like ones differing only in the case of the
+    /// scheme or in percent-encoding, are stored once.
+    ///
+    /// @throws IllegalArgumentException if a URL can't be parsed, see [UrlBuilder#fromString(String)]
+    public static UrlStore of(final Collection<String> urls) {
+        final List<String> rendered = new ArrayList<>(urls.size());
+        for (final String url : urls) {
+            rendered.add(UrlBuilder.fromString(url).toString());
+        }
+        return ofRendered(rendered);
+    }
+
+    /// Builds a store from the rendered forms of the given builders, in any order.
+    /// Duplicates are dropped.
+    public static UrlStore ofBuilders(final Collection<UrlBuilder> urls) {
+        final List<String> rendered = new ArrayList<>(urls.size());
+        for (final UrlBuilder url : urls) {
+            rendered.add(url.toString());
+        }
+        return ofRendered(rendered);
+    }
+
+    private static UrlStore ofRendered(final List<String> urls) {
+        final byte[][] keys = new byte[urls.size()][];
+        int i = 0;
+        for (final String url : urls) {
+            keys[i++] = url.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(keys, Arrays::compareUnsigned);
+        final Builder builder = builder();
+        for (final byte[] key : keys) {
+            builder.add(key);
+        }
+        return builder.build();
+    }
+
+    /// Returns a builder which accepts URLs in ascending order, without holding them all in memory.
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /// The number of URLs in this store.
+    public int size() {
+        return size;
+    }
+
+    /// The number of bytes used by the encoded entries and the block index.
+    public long sizeInBytes() {
+        long total = (long) blocks.length * Long.BYTES;
+        for (final byte[] page : pages) {
+            total += page.length;
+        }
+        return total;
+    }
+
+    /// Returns the rendered URL with the given ordinal.
+    ///
+    /// @throws IndexOutOfBoundsException if the ordinal is not in `[0, size())`
+    public String get(final int ordinal) {
+        Objects.checkIndex(ordinal, size);
+        final Cursor cursor = new Cursor(ordinal / BLOCK_SIZE);
+        for (int i = ordinal % BLOCK_SIZE; i > 0; i--) {
+            cursor.next();
+        }
+        return cursor.next().asString();
+    }
+
+    /// Returns the URL with the given ordinal, parsed into a builder.
+    ///
+    /// @throws IndexOutOfBoundsException if the ordinal is not in `[0, size())`
+    public UrlBuilder getBuilder(final int ordinal) {
+        return UrlBuilder.fromString(get(ordinal));
+    }
+
+    /// Returns the ordinal of the URL, or `-(insertion point) - 1` if it isn't in this store.
+    public int indexOf(final String url) {
+        return search(url.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean contains(final String url) {
+        return indexOf(url) >= 0;
+    }
+
+    public boolean contains(final UrlBuilder url) {
+        return contains(url.toString());
+    }
+
+    /// The number of URLs starting with the given prefix.
+    public int countWithPrefix(final String prefix) {
+        final byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        return prefixEnd(key) - lowerBound(key);
+    }
+
+    /// Iterates over the URLs starting with the given prefix, in ascending order.
+    public Iterable<UrlBuilder> withPrefix(final String prefix) {
+        final byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        final int from = lowerBound(key);
+        final int to = prefixEnd(key);
+        return () -> new UrlIterator(from, to);
+    }
+
+    /// Iterates over the rendered URLs, in ascending order.
+    public Iterable<String> strings() {
+        return () -> new Iterator<>() {
+            private final Cursor cursor = new Cursor(0);
+            private int ordinal = 0;
+
+            @Override
+            public boolean hasNext() {
+                return ordinal < size;
+            }
+
+            @Override
+            public String next() {
+                if (ordinal++ >= size) {
+                    throw new NoSuchElementException();
+                }
+                return cursor.next().asString();
+            }
+        };
+    }
+
+    @Override
+    public Iterator<UrlBuilder> iterator() {
+        return new UrlIterator(0, size);
+    }
+
+    private final class UrlIterator implements Iterator<UrlBuilder> {
+
+        private final Cursor cursor;
+
+        private int ordinal;
+
+        private final int to;
+
+        UrlIterator(final int from, final int to) {
+            this.cursor = new Cursor(from / BLOCK_SIZE);
+            for (int i = from % BLOCK_SIZE; i > 0 && from < to; i--) {
+                cursor.next();
+            }
+            this.ordinal = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return ordinal < to;
+        }
+
+        @Override
+        public UrlBuilder next() {
+            if (ordinal++ >= to) {
+                throw new NoSuchElementException();
+            }
+            return UrlBuilder.fromString(cursor.next().asString());
+        }
+    }
+
+    /// Returns the ordinal of the first entry which is greater than or equal to the key.
+    private int lowerBound(final byte[] key) {
+        final int found = search(key);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    /// Returns the ordinal of the key, or `-(insertion point) - 1`, like [Arrays#binarySearch].
+    private int search(final byte[] key) {
+        if (size == 0) {
+            return -1;
+        }
+        // find the last block whose first entry is <= key
+        int lo = 0;
+        int hi = blocks.length - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            final int cmp = compareBlockHead(mid, key);
+            if (cmp == 0) {
+                return mid * BLOCK_SIZE;
+            } else if (cmp < 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        final Cursor cursor = new Cursor(lo);
+        final int end = Math.min(size, (lo + 1) * BLOCK_SIZE);
+        for (int ordinal = lo * BLOCK_SIZE; ordinal < end; ordinal++) {
+            final int cmp = cursor.next().compareTo(key);
+            if (cmp == 0) {
+                return ordinal;
+            } else if (cmp > 0) {
+                return -ordinal - 1;
+            }
+        }
+        return -end - 1;
+    }
+
+    /// Returns the ordinal of the first entry which doesn't start with the prefix,
+    /// and sorts after it.
+    private int prefixEnd(final byte[] prefix) {
+        int last = prefix.length - 1;
+        while (last >= 0 && prefix[last] == (byte) 0xFF) {
+            last--;
+        }
+        if (last < 0) {
+            return size;
+        }
+        final byte[] successor = Arrays.copyOf(prefix, last + 1);
+        successor[last]++;
+        return lowerBound(successor);
+    }
+
+    private int compareBlockHead(final int block, final byte[] key) {
+        final byte[] page = pages[(int) (blocks[block] >>> 32)];
+        final int[] position = { (int) blocks[block] };
+        final int length = readVInt(page, position);
+        return Arrays.compareUnsigned(page, position[0], position[0] + length, key, 0, key.length);
+    }
+
+    /// Sequentially decodes the entries of consecutive blocks into a reusable buffer.
+    private final class Cursor {
+
+        private int block;
+
+        private int inBlock = BLOCK_SIZE;
+
+        private byte[] page;
+
+        private final int[] position = new int[1];
+
+        private byte[] term = new byte[Math.max(16, maxLength)];
+
+        private int length;
+
+        Cursor(final int block) {
+            this.block = block - 1;
+        }
+
+        Cursor next() {
+            if (inBlock == BLOCK_SIZE) {
+                block++;
+                inBlock = 0;
+                page = pages[(int) (blocks[block] >>> 32)];
+                position[0] = (int) blocks[block];
+                length = readVInt(page, position);
+                System.arraycopy(page, position[0], term, 0, length);
+                position[0] += length;
+            } else {
+                final int shared = readVInt(page, position);
+                final int suffix = readVInt(page, position);
+                System.arraycopy(page, position[0], term, shared, suffix);
+                position[0] += suffix;
+                length = shared + suffix;
+            }
+            inBlock++;
+            return this;
+        }
+
+        int compareTo(final byte[] key) {
+            return Arrays.compareUnsigned(term, 0, length, key, 0, key.length);
+        }
+
+        String asString() {
+            return new String(term, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static int readVInt(final byte[] page, final int[] position) {
+        int p = position[0];
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page[p++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        position[0] = p;
+        return value;
+    }
+
+    /// Accumulates URLs in ascending order into a [UrlStore].
+    public static final class Builder {
+
+        private final List<byte[]> pages = new ArrayList<>();
+
+        private byte[] page = new byte[1024];
+
+        private int pageLength = 0;
+
+        private long[] blocks = new long[16];
+
+        private int size = 0;
+
+        private int maxLength = 0;
+
+        private byte[] previous = new byte[0];
+
+        private byte[] block = new byte[256];
+
+        private int blockLength = 0;
+
+        private Builder() {
+        }
+
+        /// Adds a URL as it is, which should be in its rendered form, and must sort after or equal
+        /// to the previously added one. Equal URLs are only stored once.
+        ///
+        /// @throws IllegalArgumentException if the URL sorts before the previous one
+        public Builder add(final String url) {
+            return add(url.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /// Adds the rendered form of the builder, see [#add(String)].
+        public Builder add(final UrlBuilder url) {
+            return add(url.toString());
+        }
+
+        private Builder add(final byte[] key) {
+            final int cmp = Arrays.compareUnsigned(previous, key);
+            if (size > 0 && cmp == 0) {
+                return this;
+            } else if (size > 0 && cmp > 0) {
+                throw new IllegalArgumentException("URLs must be added in ascending order");
+            }
+            if (size % BLOCK_SIZE == 0) {
+                flushBlock();
+                writeVInt(key.length);
+                writeBytes(key, 0, key.length);
+            } else {
+                final int shared = Arrays.mismatch(previous, key);
+                writeVInt(shared);
+                writeVInt(key.length - shared);
+                writeBytes(key, shared, key.length - shared);
+            }
+            previous = key;
+            maxLength = Math.max(maxLength, key.length);
+            size++;
+            return this;
+        }
+
+        private void writeVInt(int value) {
+            ensureBlockCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                block[blockLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            block[blockLength++] = (byte) value;
+        }
+
+        private void writeBytes(final byte[] bytes, final int offset, final int length) {
+            ensureBlockCapacity(length);
+            System.arraycopy(bytes, offset, block, blockLength, length);
+            blockLength += length;
+        }
+
+        private void ensureBlockCapacity(final int extra) {
+            if (blockLength + extra > block.length) {
+                block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + extra));
+            }
+        }
+
+        /// Moves the finished block into the current page, starting a new page if it doesn't fit.
+        private void flushBlock() {
+            if (blockLength == 0) {
+                return;
+            }
+            if (pageLength > 0 && pageLength + blockLength > PAGE_SIZE) {
+                pages.add(Arrays.copyOf(page, pageLength));
+                page = new byte[Math.max(1024, blockLength)];
+                pageLength = 0;
+            }
+            if (pageLength + blockLength > page.length) {
+                // a single oversized block gets a page of its own
+                page = Arrays.copyOf(page, Math.max(pageLength + blockLength, Math.min(PAGE_SIZE, page.length * 2)));
+            }
+            final int blockIndex = (size - 1) / BLOCK_SIZE;
+            if (blockIndex == blocks.length) {
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+            }
+            blocks[blockIndex] = ((long) pages.size() << 32) | pageLength;
+            System.arraycopy(block, 0, page, pageLength, blockLength);
+            pageLength += blockLength;
+            blockLength = 0;
+        }
+
+        public UrlStore build() {
+            flushBlock();
+            final List<byte[]> all = new ArrayList<>(pages);
+            all.add(Arrays.copyOf(page, pageLength));
+            final int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return new UrlStore(all.toArray(new byte[0][]), Arrays.copyOf(blocks, blockCount), size, maxLength);
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder.util;
+
+import java.util.function.IntPredicate;
+
+/// Finds the next char of interest in a range, so that the encoder and the decoder can copy
+/// the runs between them in bulk instead of inspecting one char at a time.
+///
+/// This scalar implementation is always available. When the `jdk.incubator.vector` module is
+/// in the boot layer, [#INSTANCE] is a `VectorCharScanner` instead, which returns the same
+/// indexes for long ranges using SIMD compares. It is compiled separately, from `src/vector`, as
+/// only it needs the incubating module, and packaged in the same jar. Setting the system property
+/// `io.mikael.urlbuilder.vector` to `false` keeps the scalar one.
+class CharScanner {
+
+    static final CharScanner SCALAR = new CharScanner();
+
+    static final CharScanner INSTANCE = load();
+
+    private static CharScanner load() {
+        if (!Boolean.parseBoolean(System.getProperty("io.mikael.urlbuilder.vector", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (CharScanner) Class.forName("io.mikael.urlbuilder.util.VectorCharScanner")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return SCALAR;
+        }
+    }
+
+    /// Whether this scanner uses the Vector API.
+    boolean isVectorized() {
+        return false;
+    }
+
+    /// The index of the first `a` or `b` in `input[from, to)`, or `to` if there is none.
+    int indexOfEither(final CharSequence input, final int from, final int to, final char a, final char b) {
+        for (int i = from; i < to; i++) {
+            final char c = input.charAt(i);
+            if (c == a || c == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /// The index of the first char in `input[from, to)` that is not in `safe`, or `to` if there is none.
+    int indexOfUnsafe(final CharSequence input, final int from, final int to, final AsciiSet safe) {
+        for (int i = from; i < to; i++) {
+            if (!safe.contains(input.charAt(i))) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /// An immutable set of ASCII chars, as a 128-bit map.
+    static final class AsciiSet {
+
+        final long low;
+
+        final long high;
+
+        /// Scratch for `VectorCharScanner`, which keeps its lane-wide copy of the map here.
+        /// Racy but idempotent, like [String#hashCode()].
+        Object vectorWords;
+
+        private AsciiSet(final long low, final long high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        /// The set of ASCII chars matching `predicate`.
+        static AsciiSet of(final IntPredicate predicate) {
+            long low = 0;
+            long high = 0;
+            for (int c = 0; c < 64; c++) {
+                if (predicate.test(c)) {
+                    low |= 1L << c;
+                }
+                if (predicate.test(c + 64)) {
+                    high |= 1L << c;
+                }
+            }
+            return new AsciiSet(low, high);
+        }
+
+        boolean contains(final char c) {
+            return c < 64 ? (low >>> c & 1) != 0 : c < 128 && (high >>> c & 1) != 0;
+        }
+
+        /// The 16 bits of the map starting at char `16 * index`, for `index` in `[0, 8)`.
+        short word(final int index) {
+            return (short) ((index < 4 ? low : high) >>> (16 * (index & 3)));
+        }
+
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.mikael.urlbuilder.util;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/// Caches charset name lookups. Names are compared ignoring case, as [Charset#forName(String)]
+/// does, and only successful lookups are cached, so the size is bounded by the canonical names
+/// and aliases of the available charsets.
+final class CharsetCache {
+
+    private static final ConcurrentMap<String, Charset> CHARSETS =
+            new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private CharsetCache() {
+    }
+
+    static Charset forName(final String charsetName) {
+        final Charset cached = CHARSETS.get(charsetName);
+        if (cached != null) {
+            return cached;
+        }
+        final Charset charset = Charset.forName(charsetName);
+        CHARSETS.putIfAbsent(charsetName, charset);
+        return charset;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.mikael.urlbuilder.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/// A [MetricsListener] which keeps per-operation totals in striped [LongAdder]s,
+/// and latencies in a [LatencyHistogram].
+///
+/// Bridge it to a metrics library by polling the getters.
+public final class CountingMetricsListener implements MetricsListener {
+
+    private static final class Counters {
+        final LongAdder count = new LongAdder();
+        final LongAdder size = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LatencyHistogram latencies = new LatencyHistogram();
+    }
+
+    private final Map<Operation, Counters> counters = new EnumMap<>(Operation.class);
+
+    public CountingMetricsListener() {
+        for (final Operation operation : Operation.values()) {
+            counters.put(operation, new Counters());
+        }
+    }
+
+    @Override
+    public void record(final Operation operation, final int size, final long nanos) {
+        final Counters c = counters.get(operation);
+        c.count.increment();
+        c.size.add(size);
+        c.nanos.add(nanos);
+        c.latencies.record(nanos);
+    }
+
+    /// The number of completed operations.
+    public long count(final Operation operation) {
+        return counters.get(operation).count.sum();
+    }
+
+    /// The total number of chars processed.
+    public long size(final Operation operation) {
+        return counters.get(operation).size.sum();
+    }
+
+    /// The total time spent, in nanoseconds.
+    public long nanos(final Operation operation) {
+        return counters.get(operation).nanos.sum();
+    }
+
+    public LatencyHistogram latencies(final Operation operation) {
+        return counters.get(operation).latencies;
+    }
+
+    public void reset() {
+        for (final Counters c : counters.values()) {
+            c.count.reset();
+            c.size.reset();
+            c.nanos.reset();
+            c.latencies.reset();
+        }
+    }
+
+}
@@ -17,8 +17,16 @@ package io.mikael.urlbuilder.util;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.StringTokenizer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Percent-decoding according to the URI and URL standards.
@@ -29,10 +37,68 @@ public class Decoder {
 
     protected static final boolean DO_NOT_DECODE_PLUS_AS_SPACE = false;
 
+    private static final ConcurrentMap<Charset, Decoder> INSTANCES = new ConcurrentHashMap<>();
+
+    private static final Map.Entry<String, String> EMPTY_PAIR = new AbstractMap.SimpleImmutableEntry<>("", null);
+
+    /// Marks a pair dropped by the filter while parsing in parallel, which ends a run of trailing
+    /// empty pairs like any other pair does.
+    private static final Map.Entry<String, String> EXCLUDED_PAIR = new AbstractMap.SimpleImmutableEntry<>("", null);
+
+    /// Whether a class overrides [#urlDecode(String, boolean)].
+    private static final ClassValue<Boolean> OVERRIDES_URL_DECODE = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            try {
+                return type.getMethod("urlDecode", String.class, boolean.class).getDeclaringClass() != Decoder.class;
+            } catch (final NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
     protected final Charset inputEncoding;
 
+    /// Query strings at least this long are parsed in parallel, see [#withParallelThreshold(int)].
+    protected final int parallelThreshold;
+
+    /// Whether this is a subclass overriding [#urlDecode(String, boolean)], which then decodes
+    /// every key, value and path segment, as it did before ranges were decoded in place.
+    private final boolean overridesUrlDecode;
+
+    /// Prefer the shared instances from [#forCharset(Charset)], unless subclassing.
     public Decoder(final Charset inputEncoding) {
+        this(inputEncoding, Integer.MAX_VALUE);
+    }
+
+    public Decoder(final Charset inputEncoding, final int parallelThreshold) {
         this.inputEncoding = inputEncoding;
+        this.parallelThreshold = parallelThreshold;
+        this.overridesUrlDecode = getClass() != Decoder.class && OVERRIDES_URL_DECODE.get(getClass());
+    }
+
+    /// Returns the shared decoder for the charset. Decoders are immutable and thread-safe.
+    public static Decoder forCharset(final Charset charset) {
+        final Decoder cached = INSTANCES.get(charset);
+        return cached != null ? cached : INSTANCES.computeIfAbsent(charset, Decoder::new);
+    }
+
+    /// Returns the shared decoder for the named charset, see [#forCharset(Charset)].
+    public static Decoder forCharset(final String charsetName) {
+        return forCharset(CharsetCache.forName(charsetName));
+    }
+
+    /// Returns a decoder which splits query strings of at least `threshold` chars at `&`
+    /// boundaries, and decodes the pieces in parallel in the common fork/join pool. Shorter ones
+    /// are decoded sequentially, as they are by the shared instances, which never go parallel.
+    /// Only worth it for query strings of tens of kilobytes and more.
+    public Decoder withParallelThreshold(final int threshold) {
+        return new Decoder(inputEncoding, threshold);
+    }
+
+    /// The charset percent-encoded sequences are decoded with.
+    public Charset charset() {
+        return inputEncoding;
     }
 
     public String decodeUserInfo(final String userInfo) {
@@ -51,81 +117,384 @@ public class Decoder {
     }
 
     public UrlParameterMultimap parseQueryString(final String query) {
+        return query == null ? parseQueryString("", 0, 0) : parseQueryString(query, 0, query.length());
+    }
+
+    /// Parses the query string in `query[start, end)` without copying the range first.
+    public UrlParameterMultimap parseQueryString(final CharSequence query, final int start, final int end) {
+        return parseQueryString(query, start, end, null);
+    }
+
+    /// Parses the query string in `query[start, end)`, dropping the pairs whose decoded key matches
+    /// `excluded` without decoding their values. The result is the same as removing those keys
+    /// afterwards. A null filter keeps every pair.
+    public UrlParameterMultimap parseQueryString(final CharSequence query, final int start, final int end,
+                                                 final ParameterFilter excluded) {
+        final QueryDecodeEvent event = new QueryDecodeEvent();
+        event.begin();
+        final MetricsListener metrics = Metrics.listener();
+        final UrlParameterMultimap ret;
+        if (metrics == null) {
+            ret = parseQuery(query, start, end, excluded);
+        } else {
+            final long startTime = System.nanoTime();
+            ret = parseQuery(query, start, end, excluded);
+            metrics.record(MetricsListener.Operation.PARSE_QUERY, end - start, System.nanoTime() - startTime);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.inputLength = end - start;
+            event.parameterCount = ret.size();
+            event.charset = inputEncoding.name();
+            event.commit();
+        }
+        return ret;
+    }
+
+    /// Splits on `&` and then on the first `=`, dropping trailing empty pairs like `String.split` does.
+    private UrlParameterMultimap parseQuery(final CharSequence query, final int start, final int end,
+                                            final ParameterFilter excluded) {
+        final boolean keepEmptyPairs = excluded == null || !excluded.matches("");
+        if (end - start >= parallelThreshold) {
+            return parseQueryInParallel(query, start, end, excluded, keepEmptyPairs);
+        }
         final UrlParameterMultimap ret = UrlParameterMultimap.newMultimap();
-        if (query == null || query.isEmpty()) {
-            return ret;
-        }
-        for (final String part : query.split("&")) {
-            final String[] kvp = part.split("=", 2);
-            final String key, value;
-            key = urlDecode(kvp[0], DECODE_PLUS_AS_SPACE);
-            if (kvp.length == 2) {
-                value = urlDecode(kvp[1], DECODE_PLUS_AS_SPACE);
+        int pendingEmptyPairs = 0;
+        for (int pairStart = start; pairStart < end; ) {
+            final int pairEnd = CharScanner.INSTANCE.indexOfEither(query, pairStart, end, '&', '&');
+            if (pairStart == pairEnd) {
+                if (keepEmptyPairs) {
+                    pendingEmptyPairs++;
+                }
             } else {
-                value = null;
+                for (; pendingEmptyPairs > 0; pendingEmptyPairs--) {
+                    ret.add("", null);
+                }
+                final int equals = CharScanner.INSTANCE.indexOfEither(query, pairStart, pairEnd, '=', '=');
+                if (excluded == null || !isExcluded(excluded, query, pairStart, equals)) {
+                    final String key = urlDecode(query, pairStart, equals, DECODE_PLUS_AS_SPACE);
+                    final String value = equals < pairEnd
+                            ? urlDecode(query, equals + 1, pairEnd, DECODE_PLUS_AS_SPACE)
+                            : null;
+                    ret.add(key, value);
+                }
             }
-            ret.add(key, value);
+            pairStart = pairEnd + 1;
         }
         return ret;
     }
 
-    public byte[] nextDecodeableSequence(final String input, final int position) {
-        final int len = input.length();
-        final byte[] data = new byte[len];
-        int j = 0;
-        for (int i = position; i < len; i++) {
-            final char c0 = input.charAt(i);
-            if (c0 != '%' || (len < i + 3)) {
-                return Arrays.copyOfRange(data, 0, j);
+    /// Matches the raw key as it is, only decoding it first when it contains something to decode.
+    private boolean isExcluded(final ParameterFilter excluded, final CharSequence query,
+                               final int start, final int end) {
+        return overridesUrlDecode || needsDecoding(query, start, end, DECODE_PLUS_AS_SPACE)
+                ? excluded.matches(urlDecode(query, start, end, DECODE_PLUS_AS_SPACE))
+                : excluded.matches(query, start, end);
+    }
+
+    private UrlParameterMultimap parseQueryInParallel(final CharSequence query, final int start, final int end,
+                                                      final ParameterFilter excluded, final boolean keepEmptyPairs) {
+        final int[] bounds = splitAtAmpersands(query, start, end, ForkJoinPool.getCommonPoolParallelism() * 4);
+        final List<List<Map.Entry<String, String>>> chunks = IntStream.range(0, bounds.length - 1)
+                .parallel()
+                .mapToObj(i -> parsePairs(query, bounds[i], bounds[i + 1] - 1, excluded, keepEmptyPairs))
+                .collect(Collectors.toList());
+        final List<Map.Entry<String, String>> pairs = new ArrayList<>();
+        for (final List<Map.Entry<String, String>> chunk : chunks) {
+            pairs.addAll(chunk);
+        }
+        int size = pairs.size();
+        while (size > 0 && pairs.get(size - 1) == EMPTY_PAIR) {
+            size--;
+        }
+        final UrlParameterMultimap ret = UrlParameterMultimap.newMultimap();
+        for (final Map.Entry<String, String> pair : pairs.subList(0, size)) {
+            if (pair != EXCLUDED_PAIR) {
+                ret.add(pair.getKey(), pair.getValue());
+            }
+        }
+        return ret;
+    }
+
+    /// Returns the start of each chunk, just after an `&`, followed by `end + 1`.
+    private static int[] splitAtAmpersands(final CharSequence query, final int start, final int end,
+                                           final int chunks) {
+        final int[] bounds = new int[chunks + 1];
+        int n = 0;
+        bounds[n++] = start;
+        for (int k = 1; k < chunks; k++) {
+            int ampersand = Math.max(start + (int) ((long) (end - start) * k / chunks), bounds[n - 1]);
+            while (ampersand < end && query.charAt(ampersand) != '&') {
+                ampersand++;
+            }
+            if (ampersand == end) {
+                break;
+            }
+            bounds[n++] = ampersand + 1;
+        }
+        bounds[n++] = end + 1;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /// Decodes every pair in `query[start, end]`, including an empty last one, which is
+    /// marked with [#EMPTY_PAIR] like all empty pairs unless those are excluded. A pair whose key
+    /// is excluded is marked with [#EXCLUDED_PAIR] instead, without decoding its value.
+    private List<Map.Entry<String, String>> parsePairs(final CharSequence query, final int start, final int end,
+                                                       final ParameterFilter excluded, final boolean keepEmptyPairs) {
+        final List<Map.Entry<String, String>> ret = new ArrayList<>();
+        int pairStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end && query.charAt(i) != '&') {
+                continue;
+            }
+            if (pairStart == i) {
+                if (keepEmptyPairs) {
+                    ret.add(EMPTY_PAIR);
+                }
             } else {
-                data[j++] = (byte) Integer.parseInt(input.substring(i + 1, i + 3), 16);
-                i += 2;
+                int equals = pairStart;
+                while (equals < i && query.charAt(equals) != '=') {
+                    equals++;
+                }
+                if (excluded != null && isExcluded(excluded, query, pairStart, equals)) {
+                    ret.add(EXCLUDED_PAIR);
+                    pairStart = i + 1;
+                    continue;
+                }
+                final String key = urlDecode(query, pairStart, equals, DECODE_PLUS_AS_SPACE);
+                final String value = equals < i ? urlDecode(query, equals + 1, i, DECODE_PLUS_AS_SPACE) : null;
+                ret.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
             }
+            pairStart = i + 1;
         }
-        return Arrays.copyOfRange(data, 0, j);
+        return ret;
+    }
+
+    public byte[] nextDecodeableSequence(final String input, final int position) {
+        final byte[] data = new byte[countDecodeableBytes(input, position, input.length())];
+        decodeBytes(input, position, data);
+        return data;
+    }
+
+    /// The number of consecutive complete `%XX` sequences starting at `position`.
+    private static int countDecodeableBytes(final CharSequence input, final int position, final int end) {
+        int count = 0;
+        for (int i = position; i + 3 <= end && input.charAt(i) == '%'; i += 3) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void decodeBytes(final CharSequence input, final int position, final byte[] data) {
+        for (int j = 0, i = position; j < data.length; j++, i += 3) {
+            final int hi = hexValue(input.charAt(i + 1));
+            final int lo = hexValue(input.charAt(i + 2));
+            if (hi < 0 || lo < 0) {
+                throw new NumberFormatException(
+                        "Invalid percent-encoding at index " + i + ": " + input.subSequence(i, i + 3));
+            }
+            data[j] = (byte) (hi << 4 | lo);
+        }
+    }
+
+    /// Returns the index of the first `%` in `input[start, end)` that is not followed by two hex digits,
+    /// or -1 if every percent-encoded sequence is valid. A `%` fewer than three characters before
+    /// `end` is copied literally by [#urlDecode(String, boolean)] and therefore accepted here.
+    public int indexOfInvalidEscape(final CharSequence input, final int start, final int end) {
+        final CharScanner scanner = CharScanner.INSTANCE;
+        for (int i = scanner.indexOfEither(input, start, end, '%', '%'); i + 3 <= end;
+             i = scanner.indexOfEither(input, i + 3, end, '%', '%')) {
+            if (hexValue(input.charAt(i + 1)) < 0 || hexValue(input.charAt(i + 2)) < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /// Like [#indexOfInvalidEscape(CharSequence, int, int)], checking each path segment separately
+    /// the way [#decodePath(String)] decodes them.
+    public int indexOfInvalidEscapeInPath(final CharSequence input, final int start, final int end) {
+        int segmentStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || input.charAt(i) == '/') {
+                final int invalid = indexOfInvalidEscape(input, segmentStart, i);
+                if (invalid != -1) {
+                    return invalid;
+                }
+                segmentStart = i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /// Like [#indexOfInvalidEscape(CharSequence, int, int)], checking each key and value separately
+    /// the way [#parseQueryString(String)] decodes them.
+    public int indexOfInvalidEscapeInQuery(final CharSequence input, final int start, final int end) {
+        int pairStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || input.charAt(i) == '&') {
+                int equals = pairStart;
+                while (equals < i && input.charAt(equals) != '=') {
+                    equals++;
+                }
+                int invalid = indexOfInvalidEscape(input, pairStart, equals);
+                if (invalid == -1 && equals < i) {
+                    invalid = indexOfInvalidEscape(input, equals + 1, i);
+                }
+                if (invalid != -1) {
+                    return invalid;
+                }
+                pairStart = i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int hexValue(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
     }
 
     public String decodePath(final String input) {
         if (input == null || input.isEmpty()) {
             return "";
         }
+        return decodePath(input, 0, input.length());
+    }
 
-        final StringBuilder sb = new StringBuilder();
-        final boolean RETURN_DELIMETERS = true;
-        final StringTokenizer st = new StringTokenizer(input, "/", RETURN_DELIMETERS);
-
-        while (st.hasMoreElements()) {
-            final String element = st.nextToken();
-            if ("/".equals(element)) {
-                sb.append(element);
-            } else if (!element.isEmpty()) {
-                sb.append(urlDecode(element, DO_NOT_DECODE_PLUS_AS_SPACE));
+    /// Decodes the path in `input[start, end)` segment by segment, without decoding `+`.
+    public String decodePath(final CharSequence input, final int start, final int end) {
+        if (overridesUrlDecode) {
+            final StringBuilder sb = new StringBuilder(end - start);
+            int segmentStart = start;
+            for (int i = start; i <= end; i++) {
+                if (i == end || input.charAt(i) == '/') {
+                    sb.append(urlDecode(input, segmentStart, i, DO_NOT_DECODE_PLUS_AS_SPACE));
+                    if (i < end) {
+                        sb.append('/');
+                    }
+                    segmentStart = i + 1;
+                }
+            }
+            return sb.toString();
+        }
+        if (!needsDecoding(input, start, end, DO_NOT_DECODE_PLUS_AS_SPACE)) {
+            return input.subSequence(start, end).toString();
+        }
+        final StringBuilder sb = new StringBuilder(end - start);
+        int segmentStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || input.charAt(i) == '/') {
+                decodeInto(sb, input, segmentStart, i, DO_NOT_DECODE_PLUS_AS_SPACE);
+                if (i < end) {
+                    sb.append('/');
+                }
+                segmentStart = i + 1;
             }
         }
         return sb.toString();
     }
 
+    /// Decodes a path into its segments, see [#decodePathSegments(CharSequence, int, int)].
+    /// A null path is the empty path.
+    public UrlPath decodePathSegments(final String input) {
+        if (input == null || input.isEmpty()) {
+            return UrlPath.empty();
+        }
+        return decodePathSegments(input, 0, input.length());
+    }
+
+    /// Decodes the path in `input[start, end)` into its segments, so that an encoded `%2F`
+    /// stays inside its segment instead of becoming a separator.
+    public UrlPath decodePathSegments(final CharSequence input, final int start, final int end) {
+        final List<String> segments = new ArrayList<>();
+        int segmentStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || input.charAt(i) == '/') {
+                segments.add(urlDecode(input, segmentStart, i, DO_NOT_DECODE_PLUS_AS_SPACE));
+                segmentStart = i + 1;
+            }
+        }
+        return UrlPath.ofSegments(segments);
+    }
+
     public String urlDecode(final String input, final boolean decodePlusAsSpace) {
-        final StringBuilder sb = new StringBuilder();
-        final int len = input.length();
-        for (int i = 0; i < len; i++) {
-            final char c0 = input.charAt(i);
-            if (c0 == '+' && decodePlusAsSpace) {
+        return instrumentedDecode(input, 0, input.length(), decodePlusAsSpace);
+    }
+
+    /// Decodes `input[start, end)` without copying the range first. Returns the range as is,
+    /// without building a new string, when it contains nothing to decode.
+    ///
+    /// Keys, values and path segments are all decoded by this method. In a subclass which
+    /// overrides [#urlDecode(String, boolean)] it copies the range and calls that instead.
+    public String urlDecode(final CharSequence input, final int start, final int end,
+                            final boolean decodePlusAsSpace) {
+        if (overridesUrlDecode) {
+            return urlDecode(input.subSequence(start, end).toString(), decodePlusAsSpace);
+        }
+        return instrumentedDecode(input, start, end, decodePlusAsSpace);
+    }
+
+    private String instrumentedDecode(final CharSequence input, final int start, final int end,
+                                      final boolean decodePlusAsSpace) {
+        final MetricsListener metrics = Metrics.listener();
+        if (metrics == null) {
+            return decode(input, start, end, decodePlusAsSpace);
+        }
+        final long startTime = System.nanoTime();
+        final String ret = decode(input, start, end, decodePlusAsSpace);
+        metrics.record(MetricsListener.Operation.URL_DECODE, end - start, System.nanoTime() - startTime);
+        return ret;
+    }
+
+    private String decode(final CharSequence input, final int start, final int end,
+                          final boolean decodePlusAsSpace) {
+        if (!needsDecoding(input, start, end, decodePlusAsSpace)) {
+            return input.subSequence(start, end).toString();
+        }
+        final StringBuilder sb = new StringBuilder(end - start);
+        decodeInto(sb, input, start, end, decodePlusAsSpace);
+        return sb.toString();
+    }
+
+    private static boolean needsDecoding(final CharSequence input, final int start, final int end,
+                                         final boolean decodePlusAsSpace) {
+        return nextSpecial(input, start, end, decodePlusAsSpace) < end;
+    }
+
+    /// The index of the next `%`, or `+` when decoding it, in `input[start, end)`, or `end`.
+    private static int nextSpecial(final CharSequence input, final int start, final int end,
+                                   final boolean decodePlusAsSpace) {
+        return CharScanner.INSTANCE.indexOfEither(input, start, end, '%', decodePlusAsSpace ? '+' : '%');
+    }
+
+    private void decodeInto(final StringBuilder sb, final CharSequence input, final int start, final int end,
+                            final boolean decodePlusAsSpace) {
+        for (int i = start; i < end; i++) {
+            final int special = nextSpecial(input, i, end, decodePlusAsSpace);
+            sb.append(input, i, special);
+            i = special;
+            if (i == end) {
+                break;
+            } else if (input.charAt(i) == '+') {
                 sb.append(' ');
-            } else if (c0 != '%') {
-                sb.append(c0);
-            } else if (len < i + 3) {
+            } else if (end < i + 3) {
                 // the string will end before we will be able to read a sequence
-                int endIndex = Math.min(input.length(), i + 2);
-                sb.append(input, i, endIndex);
-                i += 3;
+                sb.append(input, i, end);
+                i = end;
             } else {
-                final byte[] bytes = nextDecodeableSequence(input, i);
+                final byte[] bytes = new byte[countDecodeableBytes(input, i, end)];
+                decodeBytes(input, i, bytes);
                 sb.append(inputEncoding.decode(ByteBuffer.wrap(bytes)));
                 i += bytes.length * 3 - 1;
             }
         }
-        return sb.toString();
     }
 
 }
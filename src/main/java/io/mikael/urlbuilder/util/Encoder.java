@@ -15,11 +15,21 @@ limitations under the License.
  */
 package io.mikael.urlbuilder.util;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
 
 /**
  * Percent-encoding according to the URI and URL standards.
@@ -38,10 +48,63 @@ public class Encoder {
 
     protected static final boolean IS_NOT_USERINFO = false;
 
+    /// The size of the input and output buffers of the streaming encoders, in chars.
+    private static final int STREAM_BUFFER = 8192;
+
+    private static final ConcurrentMap<Charset, Encoder> INSTANCES = new ConcurrentHashMap<>();
+
+    /// The chars copied as is, indexed by `isPath | isFragment << 1 | isUserInfo << 2`.
+    private static final CharScanner.AsciiSet[] SAFE = new CharScanner.AsciiSet[8];
+
+    static {
+        for (int flags = 0; flags < SAFE.length; flags++) {
+            final boolean isPath = (flags & 1) != 0;
+            final boolean isFragment = (flags & 2) != 0;
+            final boolean isUserInfo = (flags & 4) != 0;
+            SAFE[flags] = CharScanner.AsciiSet.of(c -> (isPath && Rfc3986Util.isPChar((char) c))
+                    || (isFragment && Rfc3986Util.isFragmentSafe((char) c))
+                    || (isUserInfo && c == ':')
+                    || Rfc3986Util.isUnreserved((char) c));
+        }
+    }
+
     protected final Charset outputEncoding;
 
+    /// Query parameters totalling at least this many chars are encoded in parallel,
+    /// see [#withParallelThreshold(int)].
+    protected final int parallelThreshold;
+
+    /// Prefer the shared instances from [#forCharset(Charset)], unless subclassing.
     public Encoder(final Charset outputEncoding) {
+        this(outputEncoding, Integer.MAX_VALUE);
+    }
+
+    public Encoder(final Charset outputEncoding, final int parallelThreshold) {
         this.outputEncoding = outputEncoding;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /// Returns the shared encoder for the charset. Encoders are immutable and thread-safe.
+    public static Encoder forCharset(final Charset charset) {
+        final Encoder cached = INSTANCES.get(charset);
+        return cached != null ? cached : INSTANCES.computeIfAbsent(charset, Encoder::new);
+    }
+
+    /// Returns the shared encoder for the named charset, see [#forCharset(Charset)].
+    public static Encoder forCharset(final String charsetName) {
+        return forCharset(CharsetCache.forName(charsetName));
+    }
+
+    /// Returns an encoder which encodes query parameters totalling at least `threshold` chars in
+    /// parallel in the common fork/join pool, joining the results in order. Smaller queries are
+    /// encoded sequentially, as they are by the shared instances, which never go parallel.
+    public Encoder withParallelThreshold(final int threshold) {
+        return new Encoder(outputEncoding, threshold);
+    }
+
+    /// The charset characters are encoded with, before percent-encoding.
+    public Charset charset() {
+        return outputEncoding;
     }
 
     public String encodeUserInfo(String input) {
@@ -55,24 +118,39 @@ public class Encoder {
         if (input == null || input.isEmpty()) {
             return "";
         }
-        final StringBuilder sb = new StringBuilder();
-        final StringTokenizer st = new StringTokenizer(input, "/", true);
-        while (st.hasMoreElements()) {
-            final String element = st.nextToken();
-            if ("/".equals(element)) {
-                sb.append(element);
-            } else if (!element.isEmpty()) {
-                sb.append(urlEncode(element, IS_PATH, IS_NOT_FRAGMENT, IS_NOT_USERINFO));
+        final StringBuilder sb = new StringBuilder(input.length());
+        int start = 0;
+        for (int i = 0; i <= input.length(); i++) {
+            if (i == input.length() || input.charAt(i) == '/') {
+                if (start > 0) {
+                    sb.append('/');
+                }
+                sb.append(encodePathSegment(input.substring(start, i)));
+                start = i + 1;
             }
         }
         return sb.toString();
     }
 
+    /// Encodes a single path segment, including any `/` in it.
+    public String encodePathSegment(final String segment) {
+        if (segment.isEmpty()) {
+            return segment;
+        }
+        return urlEncode(segment, IS_PATH, IS_NOT_FRAGMENT, IS_NOT_USERINFO);
+    }
+
     public String encodeQueryParameters(final UrlParameterMultimap queryParametersMultimap) {
         if (queryParametersMultimap == null)
             throw new IllegalArgumentException("queryParametersMultimap is required to not be null.");
+        final List<Map.Entry<String, String>> entries = queryParametersMultimap.flatEntryList();
+        if (parallelThreshold != Integer.MAX_VALUE && entries.size() > 1 && length(entries) >= parallelThreshold) {
+            return new ArrayList<>(entries).parallelStream()
+                    .map(e -> encodeQueryParameter(e.getKey(), e.getValue()))
+                    .collect(Collectors.joining("&"));
+        }
         final StringBuilder sb = new StringBuilder();
-        for (final Map.Entry<String, String> e : queryParametersMultimap.flatEntryList()) {
+        for (final Map.Entry<String, String> e : entries) {
             sb.append(encodeQueryElement(e.getKey()));
             if (e.getValue() != null) {
                 sb.append('=');
@@ -84,10 +162,183 @@ public class Encoder {
         return sb.toString();
     }
 
+    private static long length(final List<Map.Entry<String, String>> entries) {
+        long ret = 0;
+        for (final Map.Entry<String, String> e : entries) {
+            ret += e.getKey().length() + (e.getValue() == null ? 0 : e.getValue().length() + 1);
+        }
+        return ret;
+    }
+
+    /// Encodes a single `key=value` pair, or just the key when the value is null.
+    public String encodeQueryParameter(final String key, final String value) {
+        final String encodedKey = encodeQueryElement(key);
+        return value == null ? encodedKey : encodedKey + '=' + encodeQueryElement(value);
+    }
+
     public String encodeQueryElement(final String input) {
         return urlEncode(input, IS_NOT_PATH, IS_NOT_FRAGMENT, IS_NOT_USERINFO);
     }
 
+    /// Encodes a query element read from `input` into `output`, as [#encodeQueryElement(String)]
+    /// would, but chunk by chunk through fixed-size buffers, so that the memory used does not grow
+    /// with the input. Neither stream is closed, and `output` is not flushed.
+    ///
+    /// @return the number of chars written
+    public long encodeQueryElement(final Reader input, final Writer output) throws IOException {
+        return encodeStream(input, new WriterSink(output));
+    }
+
+    /// Encodes a query element into `output`, see [#encodeQueryElement(Reader, Writer)].
+    public long encodeQueryElement(final CharSequence input, final Writer output) throws IOException {
+        return encodeStream(CharBuffer.wrap(input), new WriterSink(output));
+    }
+
+    /// Encodes a query element read from `input` into `output` as US-ASCII bytes, see
+    /// [#encodeQueryElement(Reader, Writer)].
+    ///
+    /// @return the number of bytes written
+    public long encodeQueryElement(final Reader input, final WritableByteChannel output) throws IOException {
+        return encodeStream(input, new ChannelSink(output));
+    }
+
+    /// Encodes a query element into `output` as US-ASCII bytes, see
+    /// [#encodeQueryElement(Reader, WritableByteChannel)].
+    public long encodeQueryElement(final CharSequence input, final WritableByteChannel output) throws IOException {
+        return encodeStream(CharBuffer.wrap(input), new ChannelSink(output));
+    }
+
+    /// The streaming counterpart of [#encode(String, boolean, boolean, boolean)] for query elements.
+    /// A high surrogate at the end of a chunk is held back and moved to the start of the next one,
+    /// so that a surrogate pair split by the reads is still encoded as one code point.
+    private long encodeStream(final Readable input, final Sink sink) throws IOException {
+        final CharScanner.AsciiSet safe = SAFE[0];
+        final char[] chars = new char[STREAM_BUFFER];
+        final CharBuffer fill = CharBuffer.wrap(chars);
+        final CharBuffer codePoint = CharBuffer.wrap(chars);
+        final CharsetEncoder charsetEncoder = outputEncoding.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final ByteBuffer bytes = ByteBuffer.allocate((int) Math.ceil(charsetEncoder.maxBytesPerChar() * 2));
+        int carried = 0;
+        boolean eof = false;
+        while (!eof) {
+            fill.clear().position(carried);
+            final int read = input.read(fill);
+            eof = read == -1;
+            final int available = carried + Math.max(read, 0);
+            final int limit = !eof && available > 0 && Character.isHighSurrogate(chars[available - 1])
+                    ? available - 1 : available;
+            int i = 0;
+            while (i < limit) {
+                final int start = i;
+                while (i < limit && safe.contains(chars[i])) {
+                    i++;
+                }
+                sink.append(chars, start, i);
+                if (i == limit) {
+                    break;
+                }
+                final int next = i + (Character.isHighSurrogate(chars[i]) && i + 1 < limit
+                        && Character.isLowSurrogate(chars[i + 1]) ? 2 : 1);
+                codePoint.clear().position(i).limit(next);
+                bytes.clear();
+                charsetEncoder.reset().encode(codePoint, bytes, true);
+                charsetEncoder.flush(bytes);
+                for (int j = 0; j < bytes.position(); j++) {
+                    sink.appendPercentEncodedByte(bytes.get(j));
+                }
+                i = next;
+            }
+            carried = available - limit;
+            if (carried > 0) {
+                chars[0] = chars[limit];
+            }
+        }
+        sink.flush();
+        return sink.written;
+    }
+
+    /// Collects encoded chars into a fixed buffer, passing it on whenever it fills up.
+    private abstract static class Sink {
+
+        final char[] buffer = new char[STREAM_BUFFER];
+
+        int length;
+
+        long written;
+
+        final void append(final char[] chars, int start, final int end) throws IOException {
+            while (start < end) {
+                if (length == buffer.length) {
+                    flush();
+                }
+                final int n = Math.min(end - start, buffer.length - length);
+                System.arraycopy(chars, start, buffer, length, n);
+                length += n;
+                start += n;
+            }
+        }
+
+        final void appendPercentEncodedByte(final byte b) throws IOException {
+            if (buffer.length - length < 3) {
+                flush();
+            }
+            buffer[length++] = '%';
+            buffer[length++] = getHexChar((b >> 4) & 0xF);
+            buffer[length++] = getHexChar(b & 0xF);
+        }
+
+        final void flush() throws IOException {
+            write(buffer, length);
+            written += length;
+            length = 0;
+        }
+
+        abstract void write(char[] chars, int length) throws IOException;
+
+    }
+
+    private static final class WriterSink extends Sink {
+
+        private final Writer output;
+
+        WriterSink(final Writer output) {
+            this.output = output;
+        }
+
+        @Override
+        void write(final char[] chars, final int length) throws IOException {
+            output.write(chars, 0, length);
+        }
+
+    }
+
+    /// Writes the encoded chars, which are all ASCII, as one byte each.
+    private static final class ChannelSink extends Sink {
+
+        private final WritableByteChannel output;
+
+        private final ByteBuffer bytes = ByteBuffer.allocate(STREAM_BUFFER);
+
+        ChannelSink(final WritableByteChannel output) {
+            this.output = output;
+        }
+
+        @Override
+        void write(final char[] chars, final int length) throws IOException {
+            bytes.clear();
+            for (int i = 0; i < length; i++) {
+                bytes.put((byte) chars[i]);
+            }
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                output.write(bytes);
+            }
+        }
+
+    }
+
     public String encodeFragment(final String input) {
         if (input == null || input.isEmpty()) {
             return input;
@@ -98,40 +349,47 @@ public class Encoder {
     public String urlEncode(final String input, final boolean isPath,
             final boolean isFragment, final boolean isUserInfo)
     {
-        return input.codePoints()
-                .sequential()
-                .mapToObj(Character::toChars)
-                .collect(StringBuffer::new,
-                        (sb, chars) -> {
-                            boolean needsEncoding = true;
-                            if (chars.length == 1) {
-                                char c = chars[0];
-                                if ((isPath && Rfc3986Util.isPChar(c))
-                                        || (isFragment && Rfc3986Util.isFragmentSafe(c))
-                                        || (isUserInfo && c == ':')
-                                        || Rfc3986Util.isUnreserved(c)) {
-                                    sb.append(c);
-                                    needsEncoding = false;
-                                }
-                            }
-                            if (needsEncoding) {
-                                final CharBuffer cb = CharBuffer.wrap(chars);
-                                final ByteBuffer bb = outputEncoding.encode(cb);
-                                for (int j = 0; j < bb.limit(); j++) {
-                                    sb.append(appendPercentEncodedByte(bb.get(j)));
-                                }
-                            }
-                        },
-                        StringBuffer::append
-                )
-                .toString();
-    }
-
-    static char[] appendPercentEncodedByte(final byte b) {
-        final int unsignedByte = b & 0xFF;
-        final int highNibble = (unsignedByte >> 4) & 0xF;
-        final int lowNibble = unsignedByte & 0xF;
-        return new char[] {'%', getHexChar(highNibble), getHexChar(lowNibble) };
+        final MetricsListener metrics = Metrics.listener();
+        if (metrics == null) {
+            return encode(input, isPath, isFragment, isUserInfo);
+        }
+        final long start = System.nanoTime();
+        final String ret = encode(input, isPath, isFragment, isUserInfo);
+        metrics.record(MetricsListener.Operation.URL_ENCODE, input.length(), System.nanoTime() - start);
+        return ret;
+    }
+
+    /// Copies the runs of safe chars in bulk, found with [CharScanner], and percent-encodes
+    /// each other code point on its own. Returns the input itself when all of it is safe.
+    private String encode(final String input, final boolean isPath,
+            final boolean isFragment, final boolean isUserInfo)
+    {
+        final CharScanner.AsciiSet safe = SAFE[(isPath ? 1 : 0) | (isFragment ? 2 : 0) | (isUserInfo ? 4 : 0)];
+        final int length = input.length();
+        int unsafe = CharScanner.INSTANCE.indexOfUnsafe(input, 0, length, safe);
+        if (unsafe == length) {
+            return input;
+        }
+        final StringBuilder sb = new StringBuilder(length + 16);
+        int i = 0;
+        while (i < length) {
+            sb.append(input, i, unsafe);
+            if (unsafe == length) {
+                break;
+            }
+            final int next = unsafe + Character.charCount(input.codePointAt(unsafe));
+            final ByteBuffer bb = outputEncoding.encode(CharBuffer.wrap(input, unsafe, next));
+            for (int j = 0; j < bb.limit(); j++) {
+                appendPercentEncodedByte(sb, bb.get(j));
+            }
+            i = next;
+            unsafe = CharScanner.INSTANCE.indexOfUnsafe(input, i, length, safe);
+        }
+        return sb.toString();
+    }
+
+    static void appendPercentEncodedByte(final StringBuilder sb, final byte b) {
+        sb.append('%').append(getHexChar((b >> 4) & 0xF)).append(getHexChar(b & 0xF));
     }
 
     static char getHexChar(final int nibble) {
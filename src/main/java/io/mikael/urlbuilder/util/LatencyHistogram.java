@@ -0,0 +1,117 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.mikael.urlbuilder.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/// A concurrent log-linear histogram of nanosecond durations.
+///
+/// Every power of two range is split into [#SUB_BUCKETS] equal buckets, so values are
+/// recorded with a relative error of at most 1 / [#SUB_BUCKETS]. Values beyond
+/// 2^40 ns, about 18 minutes, go into the last bucket.
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_EXPONENT = 40;
+
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+
+    /// The number of buckets.
+    public static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(final long nanos) {
+        counts[bucketOf(Math.min(Math.max(nanos, 0), MAX_VALUE))].increment();
+    }
+
+    /// The number of values in the bucket.
+    public long count(final int bucket) {
+        return counts[bucket].sum();
+    }
+
+    /// The total number of recorded values.
+    public long count() {
+        long total = 0;
+        for (final LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /// The smallest value which goes into the bucket.
+    public static long lowerBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        return (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+
+    /// The largest value which goes into the bucket.
+    public static long upperBound(final int bucket) {
+        return bucket == BUCKETS - 1 ? MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    /// Returns the upper bound of the bucket which contains the given percentile, 0-100.
+    /// Returns 0 if nothing has been recorded.
+    public long valueAtPercentile(final double percentile) {
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    public void reset() {
+        for (final LongAdder count : counts) {
+            count.reset();
+        }
+    }
+
+    static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.mikael.urlbuilder.util;
+
+/// The globally installed [MetricsListener].
+///
+/// Without a listener, instrumented operations only pay for reading one field,
+/// and don't read the clock.
+public final class Metrics {
+
+    private static volatile MetricsListener listener;
+
+    private Metrics() {
+    }
+
+    /// Returns the installed listener, or `null` if there is none.
+    public static MetricsListener listener() {
+        return listener;
+    }
+
+    /// Installs a listener, replacing any previous one. Pass `null` to remove it.
+    public static void setListener(final MetricsListener listener) {
+        Metrics.listener = listener;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.mikael.urlbuilder.util;
+
+/// Receives a callback for every instrumented operation, once installed with
+/// [Metrics#setListener(MetricsListener)].
+///
+/// Implementations are called on the thread doing the work, and must be thread-safe and fast.
+public interface MetricsListener {
+
+    /// The instrumented operations.
+    enum Operation {
+        /// `UrlBuilder.fromString`, size is the input length.
+        PARSE,
+        /// `UrlBuilder.toString`, size is the output length.
+        RENDER,
+        /// [Decoder#parseQueryString(String)], size is the input length.
+        PARSE_QUERY,
+        /// [Encoder#urlEncode(String, boolean, boolean, boolean)], size is the input length.
+        URL_ENCODE,
+        /// [Decoder#urlDecode(String, boolean)], size is the input length.
+        URL_DECODE,
+        /// [java.net.IDN#toASCII(String)], size is the input length.
+        IDN_TO_ASCII,
+        /// [java.net.IDN#toUnicode(String)], size is the input length.
+        IDN_TO_UNICODE
+    }
+
+    /// @param operation the operation which completed
+    /// @param size the number of chars processed, see [Operation]
+    /// @param nanos the duration of the operation, in nanoseconds
+    void record(Operation operation, int size, long nanos);
+
+}
@@ -0,0 +1,239 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/// A compiled set of query parameter keys, matched in one walk over the key.
+///
+/// Keys are given as exact names, as prefixes, or as globs where `*` matches any run of chars
+/// and `?` any single char. All of them are compiled into one char trie: an exact key ends in
+/// an accepting state, a prefix in a state accepting everything after it, and a glob hangs off
+/// the state where its literal part before the first wildcard ends, with only the rest of it
+/// matched by hand. Matching a key therefore costs one trie step per char, plus the globs
+/// sharing a prefix with it, whatever the number of keys.
+///
+/// Use it with [io.mikael.urlbuilder.UrlBuilder#removeParameters(ParameterFilter)], or with
+/// [Decoder#parseQueryString(CharSequence, int, int, ParameterFilter)] to drop the pairs while
+/// parsing, without decoding their values. Filters are immutable and thread-safe.
+///
+/// ```java
+/// ParameterFilter tracking = ParameterFilter.of("utm_*", "fbclid", "gclid", "mc_?id", "*sessionid");
+/// ```
+public final class ParameterFilter {
+
+    private static final byte ACCEPT = 1;
+
+    private static final byte ACCEPT_REST = 2;
+
+    /// Per state, its edges are `edgeChars[edgeStart[state], edgeStart[state + 1])`, sorted.
+    private final int[] edgeStart;
+
+    private final char[] edgeChars;
+
+    private final int[] edgeTargets;
+
+    private final byte[] flags;
+
+    /// Per state, the remainders of the globs whose literal part ends there, or null.
+    private final String[][] globs;
+
+    private ParameterFilter(final int[] edgeStart, final char[] edgeChars, final int[] edgeTargets,
+                            final byte[] flags, final String[][] globs) {
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.flags = flags;
+        this.globs = globs;
+    }
+
+    /// Compiles the patterns, each one a glob if it contains `*` or `?` and an exact key otherwise.
+    /// A trailing `*` as the only wildcard makes it a prefix.
+    public static ParameterFilter of(final String... patterns) {
+        return builder().glob(patterns).build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /// Whether the decoded key matches one of the keys, prefixes or globs.
+    public boolean matches(final CharSequence key) {
+        return matches(key, 0, key.length());
+    }
+
+    /// Whether the key in `key[start, end)` matches, without copying it out first.
+    public boolean matches(final CharSequence key, final int start, final int end) {
+        int state = 0;
+        for (int i = start; ; i++) {
+            if ((flags[state] & ACCEPT_REST) != 0) {
+                return true;
+            }
+            if (globs[state] != null) {
+                for (final String glob : globs[state]) {
+                    if (globMatches(glob, key, i, end)) {
+                        return true;
+                    }
+                }
+            }
+            if (i == end) {
+                return (flags[state] & ACCEPT) != 0;
+            }
+            final int edge = Arrays.binarySearch(edgeChars, edgeStart[state], edgeStart[state + 1], key.charAt(i));
+            if (edge < 0) {
+                return false;
+            }
+            state = edgeTargets[edge];
+        }
+    }
+
+    /// Matches `key[start, end)` against a glob, backtracking only to the last `*` seen.
+    private static boolean globMatches(final String glob, final CharSequence key, final int start, final int end) {
+        int g = 0;
+        int k = start;
+        int starGlob = -1;
+        int starKey = -1;
+        while (k < end) {
+            if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == key.charAt(k))) {
+                g++;
+                k++;
+            } else if (g < glob.length() && glob.charAt(g) == '*') {
+                starGlob = g++;
+                starKey = k;
+            } else if (starGlob != -1) {
+                g = starGlob + 1;
+                k = ++starKey;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    /// Collects keys, prefixes and globs for a [ParameterFilter].
+    public static final class Builder {
+
+        private final Node root = new Node();
+
+        private Builder() {
+        }
+
+        /// Adds keys matched as they are, without wildcards.
+        public Builder exact(final String... keys) {
+            for (final String key : keys) {
+                node(key).flags |= ACCEPT;
+            }
+            return this;
+        }
+
+        /// Adds prefixes matching every key which starts with them.
+        public Builder prefix(final String... prefixes) {
+            for (final String prefix : prefixes) {
+                node(prefix).flags |= ACCEPT_REST;
+            }
+            return this;
+        }
+
+        /// Adds globs, where `*` matches any run of chars, including none, and `?` any one char.
+        /// Globs without wildcards are added as exact keys, and those ending in their only `*`
+        /// as prefixes.
+        public Builder glob(final String... globs) {
+            for (final String glob : globs) {
+                final int wildcard = indexOfWildcard(glob);
+                if (wildcard == -1) {
+                    exact(glob);
+                } else if (wildcard == glob.length() - 1 && glob.charAt(wildcard) == '*') {
+                    prefix(glob.substring(0, wildcard));
+                } else {
+                    node(glob.substring(0, wildcard)).globs.add(glob.substring(wildcard));
+                }
+            }
+            return this;
+        }
+
+        private static int indexOfWildcard(final String glob) {
+            for (int i = 0; i < glob.length(); i++) {
+                if (glob.charAt(i) == '*' || glob.charAt(i) == '?') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Node node(final String key) {
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+            }
+            return node;
+        }
+
+        /// Flattens the trie breadth first into arrays.
+        public ParameterFilter build() {
+            final List<Node> nodes = new ArrayList<>();
+            final ArrayDeque<Node> queue = new ArrayDeque<>();
+            queue.add(root);
+            int edges = 0;
+            while (!queue.isEmpty()) {
+                final Node node = queue.remove();
+                node.index = nodes.size();
+                nodes.add(node);
+                edges += node.children.size();
+                queue.addAll(node.children.values());
+            }
+            final int[] edgeStart = new int[nodes.size() + 1];
+            final char[] edgeChars = new char[edges];
+            final int[] edgeTargets = new int[edges];
+            final byte[] flags = new byte[nodes.size()];
+            final String[][] globs = new String[nodes.size()][];
+            int edge = 0;
+            for (final Node node : nodes) {
+                edgeStart[node.index] = edge;
+                for (final var child : node.children.entrySet()) {
+                    edgeChars[edge] = child.getKey();
+                    edgeTargets[edge++] = child.getValue().index;
+                }
+                flags[node.index] = node.flags;
+                if (!node.globs.isEmpty()) {
+                    globs[node.index] = node.globs.toArray(new String[0]);
+                }
+            }
+            edgeStart[nodes.size()] = edge;
+            return new ParameterFilter(edgeStart, edgeChars, edgeTargets, flags, globs);
+        }
+
+    }
+
+    private static final class Node {
+
+        private final TreeMap<Character, Node> children = new TreeMap<>();
+
+        private final List<String> globs = new ArrayList<>();
+
+        private byte flags;
+
+        private int index;
+
+    }
+
+}
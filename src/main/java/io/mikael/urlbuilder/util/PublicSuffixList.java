@@ -0,0 +1,430 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder.util;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/// The public suffixes of the [Public Suffix List](https://publicsuffix.org/), for finding the
+/// registrable domain, or eTLD+1, of a host.
+///
+/// The rules are compiled into an immutable trie of labels read from the right, flattened into a
+/// handful of arrays: all labels in one char pool, and per node its edges sorted by label, found
+/// by binary search comparing the host in place. Lookups on ASCII hosts therefore allocate nothing
+/// when asked for offsets, see [#registrableDomainStart(CharSequence, int, int)]. Hosts are
+/// compared without regard to ASCII case, and internationalized rules and hosts are compared in
+/// their ASCII (punycode) form.
+///
+/// No list is bundled, as it changes every week: load the current `public_suffix_list.dat` with
+/// [#load(Path)], and keep the compiled form from [#writeCompiled(OutputStream)] for a faster
+/// start with [#readCompiled(InputStream)]. The algorithm is the one published with the list:
+/// the matching rule with most labels prevails, exception rules (`!`) prevail over all others,
+/// wildcards (`*`) match any one label, and a host no rule matches has the last label as its
+/// public suffix. Lists are immutable and thread-safe.
+public final class PublicSuffixList {
+
+    private static final int MAGIC = 0x50534C31; // "PSL1"
+
+    private static final byte RULE = 1;
+
+    private static final byte WILDCARD = 2;
+
+    private static final byte EXCEPTION = 4;
+
+    /// Per node, its edges are `[nodeEdges[node], nodeEdges[node + 1])`, sorted by label.
+    private final int[] nodeEdges;
+
+    private final byte[] flags;
+
+    private final int[] labelStart;
+
+    private final int[] labelEnd;
+
+    private final int[] edgeTargets;
+
+    private final char[] labels;
+
+    private PublicSuffixList(final int[] nodeEdges, final byte[] flags, final int[] labelStart,
+                             final int[] labelEnd, final int[] edgeTargets, final char[] labels) {
+        this.nodeEdges = nodeEdges;
+        this.flags = flags;
+        this.labelStart = labelStart;
+        this.labelEnd = labelEnd;
+        this.edgeTargets = edgeTargets;
+        this.labels = labels;
+    }
+
+    /// Loads a list in the `public_suffix_list.dat` format, read as UTF-8.
+    public static PublicSuffixList load(final Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /// Loads a list in the `public_suffix_list.dat` format: one rule per line, as the first word
+    /// of the line, with `//` starting a comment line.
+    public static PublicSuffixList load(final Reader reader) throws IOException {
+        final BufferedReader lines = reader instanceof BufferedReader b ? b : new BufferedReader(reader);
+        final List<String> rules = new ArrayList<>();
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            final String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("//")) {
+                continue;
+            }
+            final int space = indexOfWhitespace(trimmed);
+            rules.add(space == -1 ? trimmed : trimmed.substring(0, space));
+        }
+        return of(rules);
+    }
+
+    private static int indexOfWhitespace(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /// Compiles rules in the syntax of the list, like `com`, `*.ck` or `!www.ck`.
+    public static PublicSuffixList of(final Iterable<String> rules) {
+        final MutableNode root = new MutableNode();
+        for (final String rule : rules) {
+            final boolean exception = rule.startsWith("!");
+            final String[] ruleLabels = (exception ? rule.substring(1) : rule).split("\\.");
+            MutableNode node = root;
+            for (int i = ruleLabels.length - 1; i >= 0; i--) {
+                final String label = ruleLabels[i];
+                if (label.equals("*") && i == 0) {
+                    node.flags |= WILDCARD;
+                    node = null;
+                    break;
+                }
+                node = node.children.computeIfAbsent(toAscii(label), l -> new MutableNode());
+            }
+            if (node != null) {
+                node.flags |= exception ? EXCEPTION : RULE;
+            }
+        }
+        return compile(root);
+    }
+
+    private static String toAscii(final String label) {
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) >= 0x80) {
+                return IDN.toASCII(label, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT);
+            }
+        }
+        return label.toLowerCase(Locale.ROOT);
+    }
+
+    private static PublicSuffixList compile(final MutableNode root) {
+        final List<MutableNode> nodes = new ArrayList<>();
+        final ArrayDeque<MutableNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        int edges = 0;
+        int chars = 0;
+        while (!queue.isEmpty()) {
+            final MutableNode node = queue.remove();
+            node.index = nodes.size();
+            nodes.add(node);
+            edges += node.children.size();
+            for (final String label : node.children.keySet()) {
+                chars += label.length();
+            }
+            queue.addAll(node.children.values());
+        }
+        final int[] nodeEdges = new int[nodes.size() + 1];
+        final byte[] flags = new byte[nodes.size()];
+        final int[] labelStart = new int[edges];
+        final int[] labelEnd = new int[edges];
+        final int[] edgeTargets = new int[edges];
+        final char[] labels = new char[chars];
+        int edge = 0;
+        int pool = 0;
+        for (final MutableNode node : nodes) {
+            nodeEdges[node.index] = edge;
+            flags[node.index] = node.flags;
+            for (final var child : node.children.entrySet()) {
+                final String label = child.getKey();
+                label.getChars(0, label.length(), labels, pool);
+                labelStart[edge] = pool;
+                pool += label.length();
+                labelEnd[edge] = pool;
+                edgeTargets[edge++] = child.getValue().index;
+            }
+        }
+        nodeEdges[nodes.size()] = edge;
+        return new PublicSuffixList(nodeEdges, flags, labelStart, labelEnd, edgeTargets, labels);
+    }
+
+    /// Reads a list written by [#writeCompiled(OutputStream)].
+    ///
+    /// @throws IOException if the stream doesn't hold a compiled list
+    public static PublicSuffixList readCompiled(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a compiled public suffix list");
+        }
+        final int nodes = data.readInt();
+        final int edges = data.readInt();
+        final int chars = data.readInt();
+        final int[] nodeEdges = new int[nodes + 1];
+        final byte[] flags = new byte[nodes];
+        for (int i = 0; i <= nodes; i++) {
+            nodeEdges[i] = data.readInt();
+        }
+        data.readFully(flags);
+        final int[] labelStart = new int[edges];
+        final int[] labelEnd = new int[edges];
+        final int[] edgeTargets = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            labelStart[i] = data.readInt();
+            labelEnd[i] = data.readInt();
+            edgeTargets[i] = data.readInt();
+        }
+        final char[] labels = new char[chars];
+        for (int i = 0; i < chars; i++) {
+            labels[i] = data.readChar();
+        }
+        return new PublicSuffixList(nodeEdges, flags, labelStart, labelEnd, edgeTargets, labels);
+    }
+
+    /// Writes the compiled trie, to be read back with [#readCompiled(InputStream)]. Doesn't close
+    /// the stream.
+    public void writeCompiled(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(flags.length);
+        data.writeInt(edgeTargets.length);
+        data.writeInt(labels.length);
+        for (final int i : nodeEdges) {
+            data.writeInt(i);
+        }
+        data.write(flags);
+        for (int i = 0; i < edgeTargets.length; i++) {
+            data.writeInt(labelStart[i]);
+            data.writeInt(labelEnd[i]);
+            data.writeInt(edgeTargets[i]);
+        }
+        for (final char c : labels) {
+            data.writeChar(c);
+        }
+        data.flush();
+    }
+
+    /// The registrable domain of the host, its public suffix and one more label, or null if the
+    /// host is itself a public suffix, an IP address, or not a valid domain name. A trailing `.`
+    /// is left out.
+    public String registrableDomain(final String host) {
+        return labels(host, true);
+    }
+
+    /// The public suffix of the host, or null if the host is an IP address or not a valid domain
+    /// name. A trailing `.` is left out.
+    public String publicSuffix(final String host) {
+        return labels(host, false);
+    }
+
+    /// Whether the host is exactly a public suffix, like `com` or `co.uk`.
+    public boolean isPublicSuffix(final String host) {
+        final String ascii = asciiHost(host);
+        return ascii != null && publicSuffixStart(ascii, 0, ascii.length()) == 0;
+    }
+
+    /// Finds the labels in the ASCII form of the host, and takes as many from the host itself.
+    private String labels(final String host, final boolean registrable) {
+        final String ascii = asciiHost(host);
+        if (ascii == null) {
+            return null;
+        }
+        final int start = registrable
+                ? registrableDomainStart(ascii, 0, ascii.length())
+                : publicSuffixStart(ascii, 0, ascii.length());
+        if (start == -1) {
+            return null;
+        }
+        final int end = host.endsWith(".") ? host.length() - 1 : host.length();
+        final int asciiEnd = ascii.endsWith(".") ? ascii.length() - 1 : ascii.length();
+        return host.substring(labelStart(host, 0, end, labelCount(ascii, start, asciiEnd)), end);
+    }
+
+    /// Where the registrable domain of the ASCII host in `host[start, end)` starts, or -1, without
+    /// allocating. A trailing `.` is ignored.
+    public int registrableDomainStart(final CharSequence host, final int start, int end) {
+        if (end > start && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        final int suffix = suffixLabels(host, start, end);
+        return suffix == -1 ? -1 : labelStart(host, start, end, suffix + 1);
+    }
+
+    /// Where the public suffix of the ASCII host in `host[start, end)` starts, or -1, without
+    /// allocating. A trailing `.` is ignored.
+    public int publicSuffixStart(final CharSequence host, final int start, int end) {
+        if (end > start && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        final int suffix = suffixLabels(host, start, end);
+        return suffix == -1 ? -1 : labelStart(host, start, end, suffix);
+    }
+
+    /// The number of labels in the public suffix of the host, or -1 if it is not a domain name.
+    private int suffixLabels(final CharSequence host, final int start, final int end) {
+        if (start == end || host.charAt(start) == '[' || isNumeric(host, lastLabelStart(host, start, end), end)) {
+            return -1;
+        }
+        int suffix = 1;
+        int node = 0;
+        int depth = 0;
+        int labelEnd = end;
+        while (labelEnd >= start) {
+            final int labelStart = lastLabelStart(host, start, labelEnd);
+            if (labelStart == labelEnd) {
+                return -1;
+            }
+            if ((flags[node] & WILDCARD) != 0) {
+                suffix = Math.max(suffix, depth + 1);
+            }
+            node = child(node, host, labelStart, labelEnd);
+            if (node == -1) {
+                break;
+            }
+            depth++;
+            if ((flags[node] & EXCEPTION) != 0) {
+                return depth - 1;
+            }
+            if ((flags[node] & RULE) != 0) {
+                suffix = Math.max(suffix, depth);
+            }
+            labelEnd = labelStart - 1;
+        }
+        return suffix;
+    }
+
+    private int child(final int node, final CharSequence host, final int start, final int end) {
+        int lo = nodeEdges[node];
+        int hi = nodeEdges[node + 1] - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = compare(mid, host, start, end);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /// Compares the label of the edge with the host label, lower-casing ASCII letters of the host.
+    private int compare(final int edge, final CharSequence host, final int start, final int end) {
+        final int from = labelStart[edge];
+        final int length = Math.min(labelEnd[edge] - from, end - start);
+        for (int i = 0; i < length; i++) {
+            char c = host.charAt(start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (labels[from + i] != c) {
+                return labels[from + i] - c;
+            }
+        }
+        return (labelEnd[edge] - from) - (end - start);
+    }
+
+    private static int lastLabelStart(final CharSequence host, final int start, final int end) {
+        int i = end;
+        while (i > start && host.charAt(i - 1) != '.') {
+            i--;
+        }
+        return i;
+    }
+
+    /// Where the `count`th label from the right starts, or -1 if there are fewer labels or that
+    /// one is empty.
+    private static int labelStart(final CharSequence host, final int start, final int end, final int count) {
+        int labelEnd = end;
+        for (int i = 1; i < count; i++) {
+            final int dot = lastLabelStart(host, start, labelEnd) - 1;
+            if (dot < start) {
+                return -1;
+            }
+            labelEnd = dot;
+        }
+        final int ret = lastLabelStart(host, start, labelEnd);
+        return ret == labelEnd ? -1 : ret;
+    }
+
+    private static boolean isNumeric(final CharSequence host, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (host.charAt(i) < '0' || host.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String asciiHost(final String host) {
+        for (int i = 0; i < host.length(); i++) {
+            if (host.charAt(i) >= 0x80) {
+                try {
+                    return IDN.toASCII(host, IDN.ALLOW_UNASSIGNED);
+                } catch (final IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return host;
+    }
+
+    private static int labelCount(final CharSequence host, final int start, final int end) {
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (host.charAt(i) == '.') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static final class MutableNode {
+
+        private final TreeMap<String, MutableNode> children = new TreeMap<>();
+
+        private byte flags;
+
+        private int index;
+
+    }
+
+}
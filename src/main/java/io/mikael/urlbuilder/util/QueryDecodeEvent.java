@@ -0,0 +1,41 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.mikael.urlbuilder.util;
+
+import jdk.jfr.*;
+
+/// JFR event for a [Decoder#parseQueryString(String)] call.
+///
+/// Only operations slower than the threshold are recorded, 20 ms unless
+/// overridden in the recording settings.
+@Name("io.mikael.urlbuilder.QueryDecode")
+@Label("Query Decode")
+@Category("URL Builder")
+@Threshold("20 ms")
+public final class QueryDecodeEvent extends Event {
+
+    @Label("Input Length")
+    @Description("The length of the decoded query string.")
+    public int inputLength;
+
+    @Label("Parameter Count")
+    @Description("The number of query parameters.")
+    public int parameterCount;
+
+    @Label("Charset")
+    public String charset;
+
+}
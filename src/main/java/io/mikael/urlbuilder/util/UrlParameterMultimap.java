@@ -16,17 +16,44 @@ limitations under the License.
 package io.mikael.urlbuilder.util;
 
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * A String to String multimap implementation best suited for 0-100 entries.
  */
 public class UrlParameterMultimap implements Map<String, List<String>> {
 
-    private final List<Entry<String, String>> data;
+    /// Only replaced in a mutable multimap, to stop sharing it. Once shared with an [Immutable],
+    /// the list is never written to again, as every write goes through [#writable()], which
+    /// copies it first. An [Immutable] reads its own final reference to the list, see [#entries()].
+    private List<Entry<String, String>> data;
+
+    /// Whether [#data] is also the data of an [Immutable] made by [#immutable()], and must be
+    /// copied before the next write.
+    private boolean shared;
+
+    /// Whether [#data] has been handed out by [#flatEntryList()], and can be written to by others.
+    private boolean exposed;
 
     public static final class Immutable extends UrlParameterMultimap {
-        Immutable(final List<Entry<String, String>> data) {
-            super(Collections.unmodifiableList(new LinkedList<>(data)));
+
+        /// The pairs, read through this final field rather than the superclass one, which is
+        /// not final, so that an instance published without synchronization is seen with all
+        /// of its pairs.
+        private final List<Entry<String, String>> entries;
+
+        /// Takes over the unmodifiable view of a list which nothing may write to afterwards.
+        private Immutable(final List<Entry<String, String>> entries) {
+            super(entries);
+            this.entries = entries;
+        }
+
+        @Override
+        List<Entry<String, String>> entries() {
+            return entries;
         }
     }
 
@@ -36,12 +63,12 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
 
     @Override
     public int size() {
-        return data.size();
+        return entries().size();
     }
 
     @Override
     public boolean isEmpty() {
-        return data.isEmpty();
+        return entries().isEmpty();
     }
 
     private static Entry<String, String> newEntry(final String key, final String value) {
@@ -56,18 +83,38 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
      * Make a mutable copy.
      */
     public UrlParameterMultimap deepCopy() {
-        return new UrlParameterMultimap(new LinkedList<>(data));
+        return new UrlParameterMultimap(new LinkedList<>(entries()));
     }
 
     /**
      * Make a immutable copy.
+     *
+     * The copy shares the data until this multimap is next changed, which then copies it
+     * first, so that freezing a multimap which is not changed afterwards, like a freshly parsed
+     * or copied one, takes no copy at all.
      */
     public Immutable immutable() {
         if (this instanceof Immutable) {
             return (Immutable) this;
-        } else {
-            return new Immutable(data);
+        } else if (exposed) {
+            return new Immutable(Collections.unmodifiableList(new LinkedList<>(data)));
         }
+        shared = true;
+        return new Immutable(Collections.unmodifiableList(data));
+    }
+
+    /// The pairs, for reading.
+    List<Entry<String, String>> entries() {
+        return data;
+    }
+
+    /// The data, copied first if an [Immutable] shares it.
+    private List<Entry<String, String>> writable() {
+        if (shared) {
+            data = new LinkedList<>(data);
+            shared = false;
+        }
+        return entries();
     }
 
     @Override
@@ -75,7 +122,7 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
         if (null == key) {
             throw new IllegalArgumentException("key can't be null");
         }
-        for (final Entry<String, String> e : data) {
+        for (final Entry<String, String> e : entries()) {
             if (key.equals(e.getKey())) {
                 return true;
             }
@@ -88,7 +135,7 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
         if (null == value) {
             throw new IllegalArgumentException("value can't be null");
         }
-        for (final Entry<String, String> e : data) {
+        for (final Entry<String, String> e : entries()) {
             if (value.equals(e.getValue())) {
                 return true;
             }
@@ -99,7 +146,7 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
     @Override
     public List<String> get(final Object key) {
         final List<String> ret = new ArrayList<String>();
-        for (final Entry<String, String> e : data) {
+        for (final Entry<String, String> e : entries()) {
             if (key.equals(e.getKey())) {
                 ret.add(e.getValue());
             }
@@ -107,8 +154,157 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
         return ret.isEmpty() ? null : ret;
     }
 
+    /// The first value of the key, or null if there is none, or if the key has no value,
+    /// which [#containsKey(Object)] tells apart.
+    public String getFirst(final String key) {
+        for (final Entry<String, String> e : entries()) {
+            if (key.equals(e.getKey())) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    /// Passes each value of the key to the action, in order, null for a key without a value.
+    public void forEachValue(final String key, final Consumer<? super String> action) {
+        for (final Entry<String, String> e : entries()) {
+            if (key.equals(e.getKey())) {
+                action.accept(e.getValue());
+            }
+        }
+    }
+
+    /// Passes each key and value pair to the action, in order, with a null value for a key
+    /// without one. Unlike [#flatEntryList()], this doesn't hand out the pairs.
+    public void forEachPair(final BiConsumer<? super String, ? super String> action) {
+        for (final Entry<String, String> e : entries()) {
+            action.accept(e.getKey(), e.getValue());
+        }
+    }
+
+    /// Whether the predicate accepts any value of the key, null for a key without a value,
+    /// stopping at the first one it accepts.
+    public boolean anyValue(final String key, final Predicate<? super String> predicate) {
+        for (final Entry<String, String> e : entries()) {
+            if (key.equals(e.getKey()) && predicate.test(e.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// The number of values of the key, counting a key without a value as one.
+    public int count(final String key) {
+        int ret = 0;
+        for (final Entry<String, String> e : entries()) {
+            if (key.equals(e.getKey())) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /// The first value of the key as a decimal `int`, or the default if the key is missing, or
+    /// its first value isn't one. Never throws for malformed values.
+    public int getInt(final String key, final int defaultValue) {
+        final String value = getFirst(key);
+        return isDecimal(value, true) ? (int) Long.parseLong(value) : defaultValue;
+    }
+
+    /// Like [#getInt(String, int)], with an empty result in place of the default.
+    public OptionalInt getInt(final String key) {
+        final String value = getFirst(key);
+        return isDecimal(value, true) ? OptionalInt.of((int) Long.parseLong(value)) : OptionalInt.empty();
+    }
+
+    /// The first value of the key as a decimal `long`, or the default if the key is missing, or
+    /// its first value isn't one. Never throws for malformed values.
+    public long getLong(final String key, final long defaultValue) {
+        final String value = getFirst(key);
+        return isDecimal(value, false) ? Long.parseLong(value) : defaultValue;
+    }
+
+    /// Like [#getLong(String, long)], with an empty result in place of the default.
+    public OptionalLong getLong(final String key) {
+        final String value = getFirst(key);
+        return isDecimal(value, false) ? OptionalLong.of(Long.parseLong(value)) : OptionalLong.empty();
+    }
+
+    /// The first value of the key as a boolean, or the default if the key is missing, or its
+    /// first value isn't one. `true`, `on`, `yes` and `1` are true, and `false`, `off`, `no` and
+    /// `0` false, ignoring case. A key without a value, like `?debug`, is true.
+    public boolean getBoolean(final String key, final boolean defaultValue) {
+        final int value = parseBoolean(key);
+        return value == -1 ? defaultValue : value == 1;
+    }
+
+    /// Like [#getBoolean(String, boolean)], with an empty result in place of the default.
+    public Optional<Boolean> getBoolean(final String key) {
+        final int value = parseBoolean(key);
+        return value == -1 ? Optional.empty() : Optional.of(value == 1);
+    }
+
+    /// The first value of the key as 1 for true, 0 for false, and -1 for neither or a missing key.
+    private int parseBoolean(final String key) {
+        for (final Entry<String, String> e : entries()) {
+            if (key.equals(e.getKey())) {
+                return parseBooleanValue(e.getValue());
+            }
+        }
+        return -1;
+    }
+
+    private static int parseBooleanValue(final String value) {
+        if (value == null || value.equalsIgnoreCase("true") || value.equalsIgnoreCase("on")
+                || value.equalsIgnoreCase("yes") || value.equals("1")) {
+            return 1;
+        } else if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("off")
+                || value.equalsIgnoreCase("no") || value.equals("0")) {
+            return 0;
+        }
+        return -1;
+    }
+
+    /// Whether [Long#parseLong(String)] parses the value into an `int`, or a `long`, without
+    /// throwing, checked without parsing it.
+    private static boolean isDecimal(final String value, final boolean asInt) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        final boolean signed = value.charAt(0) == '-' || value.charAt(0) == '+';
+        final int digits = value.length() - (signed ? 1 : 0);
+        if (digits == 0) {
+            return false;
+        }
+        for (int i = signed ? 1 : 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        final String limit = asInt
+                ? (value.charAt(0) == '-' ? "2147483648" : "2147483647")
+                : (value.charAt(0) == '-' ? "9223372036854775808" : "9223372036854775807");
+        int first = signed ? 1 : 0;
+        while (first < value.length() - 1 && value.charAt(first) == '0') {
+            first++;
+        }
+        final int significant = value.length() - first;
+        return significant < limit.length()
+                || significant == limit.length() && compareDigits(value, first, limit) <= 0;
+    }
+
+    private static int compareDigits(final String value, final int from, final String limit) {
+        for (int i = 0; i < limit.length(); i++) {
+            final int cmp = value.charAt(from + i) - limit.charAt(i);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
     public UrlParameterMultimap add(final String key, final String value) {
-        data.add(newEntry(key, value));
+        writable().add(newEntry(key, value));
         return this;
     }
 
@@ -121,7 +317,7 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
     @Override
     public List<String> put(final String key, final List<String> value) {
         final List<String> overflow = new ArrayList<String>(value);
-        final ListIterator<Entry<String, String>> it = data.listIterator();
+        final ListIterator<Entry<String, String>> it = writable().listIterator();
         while (it.hasNext()) {
             final Entry<String, String> e = it.next();
             if (key.equals(e.getKey()) && value.contains(e.getValue())) {
@@ -142,7 +338,7 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
             throw new IllegalArgumentException("can't remove null");
         }
         final List<String> ret = new ArrayList<String>();
-        final ListIterator<Entry<String, String>> it = data.listIterator();
+        final ListIterator<Entry<String, String>> it = writable().listIterator();
         while (it.hasNext()) {
             final Entry<String, String> e = it.next();
             if (key.equals(e.getKey())) {
@@ -162,7 +358,7 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
         if (null == key || null == value) {
             throw new IllegalArgumentException("can't remove null");
         }
-        final ListIterator<Entry<String, String>> it = data.listIterator();
+        final ListIterator<Entry<String, String>> it = writable().listIterator();
         while (it.hasNext()) {
             final Entry<String, String> e = it.next();
             if (key.equals(e.getKey()) && value.equals(e.getValue())) {
@@ -172,6 +368,14 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
         return this;
     }
 
+    /**
+     * Removes every key and value pair matching the predicate, in one pass.
+     */
+    public UrlParameterMultimap removeIf(final BiPredicate<? super String, ? super String> predicate) {
+        writable().removeIf(e -> predicate.test(e.getKey(), e.getValue()));
+        return this;
+    }
+
     @Override
     public void putAll(Map<? extends String, ? extends List<String>> m) {
         for (final Entry<? extends String, ? extends List<String>> e : m.entrySet()) {
@@ -181,26 +385,37 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
 
     @Override
     public void clear() {
-        data.clear();
+        if (shared) {
+            data = new LinkedList<>();
+            shared = false;
+        } else {
+            entries().clear();
+        }
     }
 
     @Override
     public Set<String> keySet() {
         final Set<String> ret = new HashSet<String>();
-        for (final Entry<String, String> e : data) {
+        for (final Entry<String, String> e : entries()) {
             ret.add(e.getKey());
         }
         return ret;
     }
 
+    /// The key and value pairs in order. The list of a mutable multimap is its own, and writes
+    /// to it change the multimap, so [#immutable()] copies the pairs once it has been handed out.
     public List<Entry<String, String>> flatEntryList() {
-        return data;
+        if (this instanceof Immutable) {
+            return entries();
+        }
+        exposed = true;
+        return writable();
     }
 
     @Override
     public Set<Entry<String, List<String>>> entrySet() {
         final LinkedHashMap<String, List<String>> entries = new LinkedHashMap<>();
-        for (final Entry<String, String> e : data) {
+        for (final Entry<String, String> e : entries()) {
             if (!entries.containsKey(e.getKey())) {
                 entries.put(e.getKey(), new LinkedList<String>());
             }
@@ -227,11 +442,11 @@ public class UrlParameterMultimap implements Map<String, List<String>> {
             return false;
         }
         final UrlParameterMultimap otherMultimap = (UrlParameterMultimap) other;
-        return data.equals(otherMultimap.data);
+        return entries().equals(otherMultimap.entries());
     }
 
     @Override
     public int hashCode() {
-        return data.hashCode();
+        return entries().hashCode();
     }
 }
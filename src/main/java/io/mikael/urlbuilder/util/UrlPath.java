@@ -0,0 +1,242 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/// An immutable URL path, as the list of its decoded segments.
+///
+/// The segments are those between the slashes, so `/a/b/` is `["", "a", "b", ""]` and the empty
+/// path is `[""]`. A segment may itself contain a `/`, which is then encoded as `%2F` instead of
+/// being taken as a separator, so such segments survive a round trip.
+///
+/// Paths are persistent: appending a segment shares the existing ones, and both the joined
+/// decoded form and the encoded form are computed once per path, reusing the parent's.
+public final class UrlPath {
+
+    private record Encoded(Encoder encoder, String value) { }
+
+    private static final UrlPath EMPTY = new UrlPath(null, "");
+
+    /// The path without its last segment, or null if this is the first segment.
+    private final UrlPath parent;
+
+    private final String segment;
+
+    private final int size;
+
+    /// Racy single-check caches, like [String#hashCode()].
+    private String joined;
+
+    private Encoded encodedSegment;
+
+    private Encoded encodedPath;
+
+    private UrlPath(final UrlPath parent, final String segment) {
+        this.parent = parent;
+        this.segment = segment;
+        this.size = parent == null ? 1 : parent.size + 1;
+    }
+
+    /// The empty path, `""`.
+    public static UrlPath empty() {
+        return EMPTY;
+    }
+
+    /// Splits a decoded path on `/`, or returns null for a null path.
+    public static UrlPath of(final String path) {
+        if (path == null) {
+            return null;
+        } else if (path.isEmpty()) {
+            return EMPTY;
+        }
+        UrlPath ret = null;
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                ret = new UrlPath(ret, path.substring(start, i));
+                start = i + 1;
+            }
+        }
+        ret.joined = path;
+        return ret;
+    }
+
+    /// A path of the given decoded segments, taken literally.
+    public static UrlPath ofSegments(final List<String> segments) {
+        if (segments.isEmpty()) {
+            return EMPTY;
+        }
+        UrlPath ret = null;
+        for (final String segment : segments) {
+            ret = new UrlPath(ret, segment);
+        }
+        return ret;
+    }
+
+    /// Appends one literal segment, in constant time. A `/` in the segment is part of it and will
+    /// be encoded as `%2F`. A trailing empty segment, as in `/a/`, is replaced, so `/a/` plus `b`
+    /// is `/a/b`, and an empty path becomes `/b`.
+    public UrlPath append(final String segment) {
+        if (parent != null && this.segment.isEmpty()) {
+            return new UrlPath(parent, segment);
+        }
+        return new UrlPath(this, segment);
+    }
+
+    /// Appends a decoded relative path, whose slashes separate segments. Exactly one slash is kept
+    /// between the existing path and the appended one, and empty input leaves the path unchanged.
+    public UrlPath appendPath(final String path) {
+        if (path.isEmpty()) {
+            return this;
+        }
+        UrlPath ret = parent != null && this.segment.isEmpty() ? parent : this;
+        int start = path.charAt(0) == '/' ? 1 : 0;
+        for (int i = start; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                ret = new UrlPath(ret, path.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return ret;
+    }
+
+    /// The number of segments, at least one.
+    public int size() {
+        return size;
+    }
+
+    /// The last decoded segment.
+    public String lastSegment() {
+        return segment;
+    }
+
+    /// The decoded segments, as an unmodifiable list.
+    public List<String> segments() {
+        return Collections.unmodifiableList(Arrays.asList(segmentArray()));
+    }
+
+    private String[] segmentArray() {
+        final String[] ret = new String[size];
+        UrlPath p = this;
+        for (int i = size - 1; i >= 0; i--, p = p.parent) {
+            ret[i] = p.segment;
+        }
+        return ret;
+    }
+
+    /// The percent-encoded path, with each segment encoded by [Encoder#encodePathSegment(String)].
+    /// Computed once for the most recently used encoder.
+    public String encoded(final Encoder encoder) {
+        final Encoded cached = this.encodedPath;
+        if (cached != null && cached.encoder() == encoder) {
+            return cached.value();
+        }
+        final String value;
+        final Encoded parentEncoded = parent == null ? null : parent.encodedPath;
+        if (parent == null) {
+            value = encodedSegment(encoder);
+        } else if (parentEncoded != null && parentEncoded.encoder() == encoder) {
+            value = parentEncoded.value() + '/' + encodedSegment(encoder);
+        } else {
+            final StringBuilder sb = new StringBuilder(length() + 16);
+            appendEncoded(sb, encoder);
+            value = sb.toString();
+        }
+        this.encodedPath = new Encoded(encoder, value);
+        return value;
+    }
+
+    private void appendEncoded(final StringBuilder sb, final Encoder encoder) {
+        final UrlPath[] nodes = new UrlPath[size];
+        UrlPath p = this;
+        for (int i = size - 1; i >= 0; i--, p = p.parent) {
+            nodes[i] = p;
+        }
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(nodes[i].encodedSegment(encoder));
+        }
+    }
+
+    private String encodedSegment(final Encoder encoder) {
+        final Encoded cached = this.encodedSegment;
+        if (cached != null && cached.encoder() == encoder) {
+            return cached.value();
+        }
+        final String value = encoder.encodePathSegment(segment);
+        this.encodedSegment = new Encoded(encoder, value);
+        return value;
+    }
+
+    private int length() {
+        int ret = size - 1;
+        for (UrlPath p = this; p != null; p = p.parent) {
+            ret += p.segment.length();
+        }
+        return ret;
+    }
+
+    /// The decoded path, segments joined with `/`. A `/` inside a segment can't be told apart
+    /// from a separator in this form.
+    @Override
+    public String toString() {
+        String joined = this.joined;
+        if (joined == null) {
+            final String parentJoined = parent == null ? null : parent.joined;
+            if (parent == null) {
+                joined = segment;
+            } else if (parentJoined != null) {
+                joined = parentJoined + '/' + segment;
+            } else {
+                joined = String.join("/", segmentArray());
+            }
+            this.joined = joined;
+        }
+        return joined;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        } else if (!(o instanceof UrlPath)) {
+            return false;
+        }
+        final UrlPath other = (UrlPath) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (UrlPath a = this, b = other; a != null; a = a.parent, b = b.parent) {
+            if (a == b) {
+                return true;
+            } else if (!a.segment.equals(b.segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(segmentArray());
+    }
+
+}
@@ -0,0 +1,112 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import io.mikael.urlbuilder.util.Encoder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Bytes allocated per operation, measured with the thread allocation counter over warmed-up
+ * loops, must stay within the budgets in allocation-budgets.properties. Raising a budget is a
+ * deliberate change to that table, visible in review.
+ */
+public class AllocationBudgetTest {
+
+    private static final String TEN_PARAMS = "https://www.example.com/api/v1/search"
+            + "?q=shoes&page=2&size=50&sort=price&order=asc&color=black&brand=acme&min=10&max=200&lang=en";
+
+    private static final String TEN_PARAMS_QUERY = TEN_PARAMS.substring(TEN_PARAMS.indexOf('?') + 1);
+
+    private static final UrlBuilder TEN_PARAMS_BUILDER = UrlBuilder.fromString(TEN_PARAMS);
+
+    private static final Encoder ENCODER = Encoder.forCharset(StandardCharsets.UTF_8);
+
+    private static final Decoder DECODER = Decoder.forCharset(StandardCharsets.UTF_8);
+
+    private static final Map<String, IntSupplier> OPERATIONS = new LinkedHashMap<>();
+
+    static {
+        OPERATIONS.put("fromString.ascii-10-params", () -> UrlBuilder.fromString(TEN_PARAMS).hostName.length());
+        OPERATIONS.put("fromString.utf8-path-and-query", () -> UrlBuilder.fromString(
+                "https://example.com/caf%C3%A9/men%C3%BC?q=cr%C3%A8me%20br%C3%BBl%C3%A9e&page=1").hostName.length());
+        OPERATIONS.put("toString.ascii-10-params.derived", () -> TEN_PARAMS_BUILDER.withScheme("http").toString().length());
+        OPERATIONS.put("toString.cached", () -> TEN_PARAMS_BUILDER.toString().length());
+        OPERATIONS.put("urlEncode.ascii-safe", () -> ENCODER.encodeQueryElement("search-term_with.only~safe-chars").length());
+        OPERATIONS.put("urlEncode.ascii-spaces", () -> ENCODER.encodeQueryElement("search term with spaces").length());
+        OPERATIONS.put("urlEncode.utf8", () -> ENCODER.encodeQueryElement("crème brûlée ☺").length());
+        OPERATIONS.put("parseQueryString.ascii-10-params", () -> DECODER.parseQueryString(TEN_PARAMS_QUERY).size());
+        OPERATIONS.put("parseQueryString.encoded-3-params",
+                () -> DECODER.parseQueryString("q=cr%C3%A8me+br%C3%BBl%C3%A9e&tag=a%26b&empty=").size());
+    }
+
+    private static final int WARMUP = 30_000;
+
+    private static final int ITERATIONS = 10_000;
+
+    private static final int ROUNDS = 5;
+
+    private static int sink;
+
+    private static Properties budgets() throws IOException {
+        final Properties ret = new Properties();
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("allocation-budgets.properties")) {
+            assertNotNull(in, "allocation-budgets.properties");
+            ret.load(in);
+        }
+        return ret;
+    }
+
+    /// The fewest bytes per operation over several rounds, so that a stray allocation from the
+    /// JIT or the test framework in one round doesn't count.
+    private static long bytesPerOperation(final com.sun.management.ThreadMXBean mx, final IntSupplier operation) {
+        final long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            sink += operation.getAsInt();
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long before = mx.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += operation.getAsInt();
+            }
+            best = Math.min(best, (mx.getThreadAllocatedBytes(thread) - before) / ITERATIONS);
+        }
+        return best;
+    }
+
+    @Test
+    public void everyOperationHasABudget() throws IOException {
+        assertEquals(new TreeSet<>(OPERATIONS.keySet()), new TreeSet<>(budgets().stringPropertyNames()));
+    }
+
+    @Test
+    public void operationsStayWithinBudget() throws IOException {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "no thread allocation counter");
+        final com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled(),
+                "thread allocation counter disabled");
+
+        final Properties budgets = budgets();
+        final List<String> overBudget = new ArrayList<>();
+        for (final Map.Entry<String, IntSupplier> e : OPERATIONS.entrySet()) {
+            final long budget = Long.parseLong(budgets.getProperty(e.getKey()).trim());
+            final long actual = bytesPerOperation(mx, e.getValue());
+            if (actual > budget) {
+                overBudget.add(e.getKey() + ": " + actual + " B/op, budget " + budget + " B/op");
+            }
+        }
+        assertTrue(overBudget.isEmpty(), String.join("\n", overBudget));
+    }
+
+}
@@ -0,0 +1,188 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import io.mikael.urlbuilder.util.Encoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives shared builders, encoders and decoders from many threads at once, and checks every result
+ * against a single-threaded run. The throughput by thread count is measured by ConcurrencyBenchmark.
+ */
+public class ConcurrencyTest {
+
+    private static final int INPUTS = 256;
+
+    private static final int VIRTUAL_THREADS = 10_000;
+
+    private static final int OPERATIONS_PER_POOL = 20_000;
+
+    private static final int COLD_ROUNDS = 500;
+
+    private static final String SHARED_BASE = "https://www.example.com/base/path?shared=1#top";
+
+    /// Not rendered before the threads start, so that they race to fill its caches.
+    private final UrlBuilder sharedBase = UrlBuilder.fromString(SHARED_BASE);
+
+    private final Encoder sharedEncoder = new Encoder(StandardCharsets.UTF_8);
+
+    private final Decoder sharedDecoder = new Decoder(StandardCharsets.UTF_8);
+
+    private final String sharedBaseString = UrlBuilder.fromString(SHARED_BASE).toString();
+
+    private final String[] inputs = new String[INPUTS];
+
+    private final String[] expected = new String[INPUTS];
+
+    public ConcurrencyTest() {
+        for (int i = 0; i < INPUTS; i++) {
+            inputs[i] = "http://host" + (i % 7) + ".example.com:" + (8000 + i)
+                    + "/p/" + i + "/h%C3%B6pl%C3%A4?q=" + i + "&r=a+b%26c#f" + i;
+        }
+        final ConcurrencyTest reference = new ConcurrencyTest(inputs);
+        for (int i = 0; i < INPUTS; i++) {
+            expected[i] = reference.workload(i);
+        }
+    }
+
+    /// A reference instance, computing the expected results with builders of its own.
+    private ConcurrencyTest(final String[] inputs) {
+        System.arraycopy(inputs, 0, this.inputs, 0, INPUTS);
+    }
+
+    private String workload(final int i) {
+        final UrlBuilder parsed = UrlBuilder.fromString(inputs[i], sharedDecoder);
+        final UrlBuilder changed = parsed
+                .withScheme("https")
+                .withPath(parsed.path + "/x")
+                .addParameter("n", "ä" + i)
+                .setParameter("q", "v" + i)
+                .removeParameters("r")
+                .withFragment(null);
+        final UrlBuilder derived = sharedBase
+                .addParameter("i", Integer.toString(i))
+                .withPort(i);
+        final String encoded = sharedEncoder.encodeQueryElement("k " + i + "&ö");
+        final String decoded = sharedDecoder.urlDecode(encoded, true);
+        return changed + " " + derived + " " + encoded + " " + decoded + " " + sharedBase;
+    }
+
+    private void check(final int i, final Queue<String> failures) {
+        final String actual = workload(i);
+        if (!expected[i].equals(actual)) {
+            failures.add(actual);
+        }
+        if (!sharedBaseString.equals(sharedBase.toString())) {
+            failures.add("shared base changed: " + sharedBase);
+        }
+    }
+
+    @Test
+    public void virtualThreads() throws Exception {
+        final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < VIRTUAL_THREADS; t++) {
+                final int thread = t;
+                executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 4; j++) {
+                        check((thread + j) % INPUTS, failures);
+                        Thread.yield();
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        }
+        assertTrue(failures.isEmpty(), () -> failures.size() + " failures, first: " + failures.peek());
+    }
+
+    @Test
+    public void platformThreads() throws Exception {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads = threads < 4 ? threads + 1 : threads * 2) {
+            counts.add(threads);
+        }
+        counts.add(cores);
+        for (final int threads : counts) {
+            final Queue<String> failures = new ConcurrentLinkedQueue<>();
+            final ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                runTasks(pool, threads, OPERATIONS_PER_POOL, failures);
+            } finally {
+                pool.shutdown();
+                assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+            }
+            assertTrue(failures.isEmpty(), () -> threads + " threads, " + failures.size()
+                    + " failures, first: " + failures.peek());
+        }
+    }
+
+    /// Every round parses a new builder, whose caches are all empty, and starts the threads on it
+    /// at once, half of them rendering it with toString() first and half with toUri().
+    @Test
+    public void concurrentCacheFill() throws Exception {
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < COLD_ROUNDS; round++) {
+                final String input = inputs[round % INPUTS];
+                final String expectedString = UrlBuilder.fromString(input, sharedDecoder).toString();
+                final UrlBuilder cold = UrlBuilder.fromString(input, sharedDecoder);
+                final CyclicBarrier start = new CyclicBarrier(threads);
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    final boolean uriFirst = t % 2 == 1;
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        final String first = uriFirst ? cold.toUri().toString() : cold.toString();
+                        final String second = uriFirst ? cold.toString() : cold.toUri().toString();
+                        if (!expectedString.equals(first) || !expectedString.equals(second)) {
+                            failures.add(first + " " + second);
+                        }
+                        return null;
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        assertTrue(failures.isEmpty(), () -> failures.size() + " failures, first: " + failures.peek());
+    }
+
+    private void runTasks(final ExecutorService pool, final int threads, final int operations,
+                          final Queue<String> failures) throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int j = thread; j < operations; j += threads) {
+                    check(j % INPUTS, failures);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+}
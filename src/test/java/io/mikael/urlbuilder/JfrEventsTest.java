@@ -0,0 +1,54 @@
+package io.mikael.urlbuilder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JfrEventsTest {
+
+    private static RecordedEvent find(final List<RecordedEvent> events, final String name) {
+        return events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no event " + name));
+    }
+
+    @Test
+    public void eventsAreRecorded() throws Exception {
+        final Path file = Files.createTempFile("urlbuilder", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("io.mikael.urlbuilder.UrlParse").withThreshold(Duration.ZERO);
+            recording.enable("io.mikael.urlbuilder.UrlRender").withThreshold(Duration.ZERO);
+            recording.enable("io.mikael.urlbuilder.QueryDecode").withThreshold(Duration.ZERO);
+            recording.start();
+            UrlBuilder.fromString("http://www.example.com/?a=1&b=2", "ISO-8859-1").toString();
+            recording.stop();
+            recording.dump(file);
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+            final RecordedEvent parse = find(events, "io.mikael.urlbuilder.UrlParse");
+            assertEquals(31, parse.getInt("inputLength"));
+            assertEquals(2, parse.getInt("parameterCount"));
+            assertEquals("ISO-8859-1", parse.getString("charset"));
+
+            final RecordedEvent render = find(events, "io.mikael.urlbuilder.UrlRender");
+            assertEquals(31, render.getInt("outputLength"));
+            assertEquals("UTF-8", render.getString("charset"));
+
+            final RecordedEvent query = find(events, "io.mikael.urlbuilder.QueryDecode");
+            assertEquals(7, query.getInt("inputLength"));
+            assertEquals(2, query.getInt("parameterCount"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.CountingMetricsListener;
+import io.mikael.urlbuilder.util.LatencyHistogram;
+import io.mikael.urlbuilder.util.Metrics;
+import io.mikael.urlbuilder.util.MetricsListener.Operation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @AfterEach
+    public void removeListener() {
+        Metrics.setListener(null);
+    }
+
+    @Test
+    public void countsOperations() {
+        final CountingMetricsListener listener = new CountingMetricsListener();
+        Metrics.setListener(listener);
+        final String url = "http://www.example.com/a%20b?q=1&r=2";
+        final String rendered = UrlBuilder.fromString(url).withHost("例子.测试").toString();
+        assertEquals(1, listener.count(Operation.PARSE));
+        assertEquals(url.length(), listener.size(Operation.PARSE));
+        assertEquals(1, listener.count(Operation.PARSE_QUERY));
+        assertEquals(1, listener.count(Operation.RENDER));
+        assertEquals(rendered.length(), listener.size(Operation.RENDER));
+        assertEquals(1, listener.count(Operation.IDN_TO_UNICODE));
+        assertEquals(1, listener.count(Operation.IDN_TO_ASCII));
+        assertTrue(listener.count(Operation.URL_DECODE) >= 4);
+        assertTrue(listener.count(Operation.URL_ENCODE) >= 4);
+        assertEquals(1, listener.latencies(Operation.PARSE).count());
+        assertTrue(listener.nanos(Operation.PARSE) > 0);
+    }
+
+    @Test
+    public void encodedComponentsAreReusedAcrossWithers() {
+        final UrlBuilder base = UrlBuilder.fromString("http://bob@例子.测试/a%20b?q=1&r=2#f");
+        base.toString();
+        final CountingMetricsListener listener = new CountingMetricsListener();
+        Metrics.setListener(listener);
+
+        final UrlBuilder derived = base.withScheme("https").withPort(8443);
+        assertEquals("https://bob@xn--fsqu00a.xn--0zwm56d:8443/a%20b?q=1&r=2#f", derived.toString());
+        assertEquals(0, listener.count(Operation.URL_ENCODE));
+        assertEquals(0, listener.count(Operation.IDN_TO_ASCII));
+
+        final UrlBuilder added = derived.addParameter("s", "x y");
+        assertEquals("https://bob@xn--fsqu00a.xn--0zwm56d:8443/a%20b?q=1&r=2&s=x%20y#f", added.toString());
+        assertEquals(2, listener.count(Operation.URL_ENCODE));
+
+        assertEquals("https://bob@xn--fsqu00a.xn--0zwm56d:8443/a%20b?q=1&r=2&s=x%20y#g",
+                added.withFragment("g").toString());
+        assertEquals(3, listener.count(Operation.URL_ENCODE));
+        assertEquals("http://bob@xn--fsqu00a.xn--0zwm56d/a%20b?q=1&r=2#f", base.encodeAs("ISO-8859-1").toString());
+        assertEquals(0, listener.count(Operation.IDN_TO_ASCII));
+    }
+
+    @Test
+    public void nothingIsRecordedWithoutListener() {
+        final CountingMetricsListener listener = new CountingMetricsListener();
+        Metrics.setListener(listener);
+        Metrics.setListener(null);
+        UrlBuilder.fromString("http://www.example.com/").toString();
+        assertEquals(0, listener.count(Operation.PARSE));
+    }
+
+    @Test
+    public void histogramBuckets() {
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++) {
+            assertEquals(LatencyHistogram.lowerBound(bucket + 1), LatencyHistogram.upperBound(bucket) + 1);
+        }
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(100, histogram.count());
+        final long median = histogram.valueAtPercentile(50);
+        assertTrue(median >= 50_000 && median <= 50_000 * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS), "median " + median);
+        assertTrue(histogram.valueAtPercentile(100) >= 100_000);
+        histogram.reset();
+        assertEquals(0, histogram.valueAtPercentile(99));
+    }
+
+}
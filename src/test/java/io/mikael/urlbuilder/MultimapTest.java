@@ -1,9 +1,13 @@
 package io.mikael.urlbuilder;
 
+import io.mikael.urlbuilder.util.Decoder;
 import io.mikael.urlbuilder.util.UrlParameterMultimap;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -178,4 +182,114 @@ public class MultimapTest {
         return UrlParameterMultimap.newMultimap().add("key1", "value1");
     }
 
+    @Test
+    public void typedAccessors() {
+        final UrlParameterMultimap m = Decoder.forCharset(StandardCharsets.UTF_8).parseQueryString(
+                "n=42&n=7&neg=-2147483648&big=2147483648&long=-9223372036854775808&over=9223372036854775808"
+                        + "&bad=4x&empty=&sign=+&padded=0002147483647&flag&on=ON&off=no&maybe=perhaps");
+        assertEquals("42", m.getFirst("n"));
+        assertNull(m.getFirst("missing"));
+        assertNull(m.getFirst("flag"));
+        assertEquals(2, m.count("n"));
+        assertEquals(1, m.count("flag"));
+        assertEquals(0, m.count("missing"));
+        final List<String> values = new ArrayList<>();
+        m.forEachValue("n", values::add);
+        assertEquals(Arrays.asList("42", "7"), values);
+        assertTrue(m.anyValue("n", "7"::equals));
+        assertFalse(m.anyValue("n", "8"::equals));
+        assertTrue(m.anyValue("flag", Objects::isNull));
+        assertFalse(m.anyValue("missing", v -> true));
+
+        assertEquals(42, m.getInt("n", -1));
+        assertEquals(Integer.MIN_VALUE, m.getInt("neg", -1));
+        assertEquals(-1, m.getInt("big", -1));
+        assertEquals(2147483648L, m.getLong("big", -1));
+        assertEquals(Long.MIN_VALUE, m.getLong("long", -1));
+        assertEquals(-1, m.getLong("over", -1));
+        assertEquals(Integer.MAX_VALUE, m.getInt("padded", -1));
+        for (final String key : Arrays.asList("bad", "empty", "sign", "flag", "missing")) {
+            assertEquals(-1, m.getInt(key, -1), key);
+            assertEquals(-1, m.getLong(key, -1), key);
+        }
+        assertEquals(OptionalInt.of(42), m.getInt("n"));
+        assertEquals(OptionalInt.empty(), m.getInt("bad"));
+        assertEquals(OptionalLong.of(2147483648L), m.getLong("big"));
+        assertEquals(OptionalLong.empty(), m.getLong("missing"));
+
+        assertTrue(m.getBoolean("flag", false));
+        assertTrue(m.getBoolean("on", false));
+        assertFalse(m.getBoolean("off", true));
+        assertTrue(m.getBoolean("maybe", true));
+        assertFalse(m.getBoolean("missing", false));
+        assertEquals(Optional.of(true), m.getBoolean("flag"));
+        assertEquals(Optional.empty(), m.getBoolean("maybe"));
+        assertEquals(Optional.empty(), m.getBoolean("missing"));
+    }
+
+    @Test
+    public void writesAfterImmutableDoNotLeak() {
+        final UrlParameterMultimap m = UrlParameterMultimap.newMultimap().add("a", "1").add("b", "2");
+        final UrlParameterMultimap.Immutable frozen = m.immutable();
+        m.add("c", "3");
+        final UrlParameterMultimap.Immutable again = m.immutable();
+        m.put("a", Collections.singletonList("9"));
+        m.remove("b", "2");
+        final UrlParameterMultimap.Immutable third = m.immutable();
+        m.removeIf((k, v) -> k.equals("c"));
+        m.remove("a");
+        final UrlParameterMultimap.Immutable fourth = m.immutable();
+        m.add("d", "4");
+        m.clear();
+
+        assertEquals(Arrays.asList(newEntry("a", "1"), newEntry("b", "2")), frozen.flatEntryList());
+        assertEquals(Arrays.asList(newEntry("a", "1"), newEntry("b", "2"), newEntry("c", "3")),
+                again.flatEntryList());
+        assertEquals(Arrays.asList(newEntry("c", "3"), newEntry("a", "9")), third.flatEntryList());
+        assertTrue(fourth.isEmpty());
+        assertTrue(m.isEmpty());
+        assertSame(frozen, frozen.immutable());
+        assertThrows(UnsupportedOperationException.class, () -> frozen.add("x", "y"));
+    }
+
+    @Test
+    public void frozenCopyIsStableWhileSourceChanges() throws Exception {
+        final UrlParameterMultimap m = UrlParameterMultimap.newMultimap();
+        for (int i = 0; i < 100; i++) {
+            m.add("k" + i, Integer.toString(i));
+        }
+        final UrlParameterMultimap.Immutable frozen = m.immutable();
+        final List<Map.Entry<String, String>> expected = new ArrayList<>(frozen.flatEntryList());
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger mismatches = new AtomicInteger();
+        final Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (!expected.equals(frozen.flatEntryList()) || frozen.size() != 100) {
+                    mismatches.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 2_000; i++) {
+            m.add("x", Integer.toString(i)).remove("k" + (i % 100));
+            if (i % 100 == 0) {
+                m.immutable();
+            }
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(0, mismatches.get());
+        assertEquals(expected, frozen.flatEntryList());
+    }
+
+    @Test
+    public void exposedEntryListIsNotShared() {
+        final UrlParameterMultimap m = UrlParameterMultimap.newMultimap().add("a", "1");
+        final List<Map.Entry<String, String>> entries = m.flatEntryList();
+        final UrlParameterMultimap.Immutable frozen = m.immutable();
+        entries.add(newEntry("b", "2"));
+        assertEquals(Collections.singletonList(newEntry("a", "1")), frozen.flatEntryList());
+        assertEquals(2, m.size());
+    }
+
 }
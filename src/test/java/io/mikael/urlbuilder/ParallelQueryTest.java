@@ -0,0 +1,64 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import io.mikael.urlbuilder.util.Encoder;
+import io.mikael.urlbuilder.util.UrlParameterMultimap;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelQueryTest {
+
+    private static final Decoder SEQUENTIAL_DECODER = Decoder.forCharset(UTF_8);
+
+    private static final Encoder SEQUENTIAL_ENCODER = Encoder.forCharset(UTF_8);
+
+    private static String largeQuery() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("k").append(i % 17).append("=v%C3%A4+").append(i);
+            if (i % 100 == 0) {
+                sb.append("&&flag");
+            }
+            sb.append('&');
+        }
+        return sb.append("&&").toString();
+    }
+
+    @Test
+    public void parallelDecodeMatchesSequential() {
+        final String query = largeQuery();
+        final UrlParameterMultimap expected = SEQUENTIAL_DECODER.parseQueryString(query);
+        for (final int threshold : new int[] {0, 1, 1000, query.length()}) {
+            final UrlParameterMultimap actual = SEQUENTIAL_DECODER.withParallelThreshold(threshold)
+                    .parseQueryString(query);
+            assertEquals(expected, actual, "threshold " + threshold);
+        }
+    }
+
+    @Test
+    public void parallelDecodeKeepsEmptyPairsSemantics() {
+        final Decoder parallel = SEQUENTIAL_DECODER.withParallelThreshold(0);
+        for (final String query : new String[] {"", "&", "&&a", "a&&&", "a&&b", "=&=", "a=1&b"}) {
+            assertEquals(SEQUENTIAL_DECODER.parseQueryString(query), parallel.parseQueryString(query), query);
+        }
+    }
+
+    @Test
+    public void parallelEncodeMatchesSequential() {
+        final UrlParameterMultimap params = SEQUENTIAL_DECODER.parseQueryString(largeQuery());
+        final String expected = SEQUENTIAL_ENCODER.encodeQueryParameters(params);
+        assertEquals(expected, SEQUENTIAL_ENCODER.withParallelThreshold(0).encodeQueryParameters(params));
+        assertEquals(expected, SEQUENTIAL_ENCODER.withParallelThreshold(1 << 20).encodeQueryParameters(params));
+    }
+
+    @Test
+    public void worksThroughUrlBuilder() {
+        final String url = "http://h/?" + largeQuery();
+        final UrlBuilder parallel = UrlBuilder.fromString(url, SEQUENTIAL_DECODER.withParallelThreshold(4096))
+                .withEncoder(SEQUENTIAL_ENCODER.withParallelThreshold(4096));
+        assertEquals(UrlBuilder.fromString(url).toString(), parallel.toString());
+    }
+
+}
@@ -0,0 +1,130 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import io.mikael.urlbuilder.util.ParameterFilter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParameterFilterTest {
+
+    private static final ParameterFilter TRACKING = ParameterFilter.builder()
+            .exact("fbclid", "gclid")
+            .prefix("utm_")
+            .glob("mc_?id", "*sessionid", "_hs*_*")
+            .build();
+
+    @Test
+    public void exactKeys() {
+        assertTrue(TRACKING.matches("fbclid"));
+        assertTrue(TRACKING.matches("gclid"));
+        assertFalse(TRACKING.matches("fbcli"));
+        assertFalse(TRACKING.matches("fbclidx"));
+        assertFalse(TRACKING.matches(""));
+    }
+
+    @Test
+    public void prefixes() {
+        assertTrue(TRACKING.matches("utm_"));
+        assertTrue(TRACKING.matches("utm_source"));
+        assertFalse(TRACKING.matches("utm"));
+        assertFalse(TRACKING.matches("xutm_source"));
+    }
+
+    @Test
+    public void globs() {
+        assertTrue(TRACKING.matches("mc_cid"));
+        assertTrue(TRACKING.matches("mc_eid"));
+        assertFalse(TRACKING.matches("mc_id"));
+        assertFalse(TRACKING.matches("mc_cidx"));
+        assertTrue(TRACKING.matches("sessionid"));
+        assertTrue(TRACKING.matches("phpsessionid"));
+        assertFalse(TRACKING.matches("sessionids"));
+        assertTrue(TRACKING.matches("_hsenc_x"));
+        assertTrue(TRACKING.matches("_hs_"));
+        assertFalse(TRACKING.matches("_hsenc"));
+    }
+
+    @Test
+    public void patternSyntax() {
+        final ParameterFilter filter = ParameterFilter.of("a", "b*", "c*d", "*");
+        assertTrue(filter.matches("anything"));
+        final ParameterFilter none = ParameterFilter.of();
+        assertFalse(none.matches("a"));
+        assertFalse(none.matches(""));
+    }
+
+    @Test
+    public void subranges() {
+        final String raw = "x=1&utm_source=y";
+        assertTrue(TRACKING.matches(raw, 4, 14));
+        assertFalse(TRACKING.matches(raw, 0, 1));
+    }
+
+    @Test
+    public void removeParameters() {
+        final UrlBuilder url = UrlBuilder.fromString(
+                "https://example.com/p?id=1&utm_source=news&utm_medium=mail&fbclid=abc&q=a+b&mc_cid=7");
+        assertEquals("https://example.com/p?id=1&q=a%20b", url.removeParameters(TRACKING).toString());
+        final UrlBuilder clean = UrlBuilder.fromString("https://example.com/p?id=1");
+        assertSame(clean, clean.removeParameters(TRACKING));
+        assertEquals("/?a&b=&a=2", UrlBuilder.fromString("/?a&utm_x=1&b=&a=2&utm_y")
+                .removeParameters(TRACKING).toString());
+        assertEquals("/?a=1", UrlBuilder.fromString("/?fbclid=1&a=1").removeParameters(TRACKING).toString());
+    }
+
+    @Test
+    public void droppedWhileParsing() {
+        final String url = "https://example.com/p?id=1&utm_source=news&&fbclid=abc&q=a+b&ut%6D_x=1&&";
+        final UrlBuilder parsed = UrlBuilder.fromString(url, TRACKING);
+        assertEquals("https://example.com/p?id=1&&q=a%20b", parsed.toString());
+        assertThrows(NumberFormatException.class, () -> UrlBuilder.fromString("/?fbclid=%zz", TRACKING));
+    }
+
+    @Test
+    public void droppedValuesAreNotDecoded() {
+        final Decoder decoder = Decoder.forCharset(StandardCharsets.UTF_8);
+        final String query = "fbclid=%zz&a=1";
+        assertEquals("1", decoder.parseQueryString(query, 0, query.length(), TRACKING).get("a").get(0));
+        assertThrows(NumberFormatException.class, () -> decoder.parseQueryString(query));
+    }
+
+    @Test
+    public void sameAsRemovingAfterwards() {
+        final Decoder decoder = Decoder.forCharset(StandardCharsets.UTF_8);
+        final String[] queries = {
+                "", "&", "a=1&&&utm_a=2&&", "utm_x&&b", "fbclid=1&fbclid=2&c=%C3%A4", "=x&&=y&mc_aid=1&",
+                "utm_a=1&sessionid+x=2&x+sessionid=3&a%3Db=4",
+        };
+        for (final String query : queries) {
+            assertEquals(decoder.parseQueryString(query).removeIf((k, v) -> TRACKING.matches(k)),
+                    decoder.parseQueryString(query, 0, query.length(), TRACKING), query);
+            assertEquals(decoder.parseQueryString(query),
+                    decoder.parseQueryString(query, 0, query.length(), null), query);
+        }
+        final ParameterFilter empty = ParameterFilter.of("");
+        assertEquals(decoder.parseQueryString("a&&b&&").removeIf((k, v) -> k.isEmpty()),
+                decoder.parseQueryString("a&&b&&", 0, 6, empty));
+    }
+
+    @Test
+    public void parallelParsingDropsPairsBeforeDecoding() {
+        final Decoder sequential = Decoder.forCharset(StandardCharsets.UTF_8);
+        final Decoder parallel = sequential.withParallelThreshold(1);
+        final String[] queries = {
+                "&", "a=1&&&utm_a=2&&", "utm_x&&b", "fbclid=1&fbclid=2&c=%C3%A4", "=x&&=y&mc_aid=1&",
+                "a&&utm_b", "a&&b&&",
+        };
+        for (final ParameterFilter filter : new ParameterFilter[] { TRACKING, ParameterFilter.of("", "utm_*") }) {
+            for (final String query : queries) {
+                assertEquals(sequential.parseQueryString(query, 0, query.length(), filter),
+                        parallel.parseQueryString(query, 0, query.length(), filter), query);
+            }
+        }
+        final String invalid = "fbclid=%zz&a=1&utm_x=%zz";
+        assertEquals("1", parallel.parseQueryString(invalid, 0, invalid.length(), TRACKING).get("a").get(0));
+    }
+
+}
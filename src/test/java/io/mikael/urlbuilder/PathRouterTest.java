@@ -0,0 +1,147 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathRouterTest {
+
+    private static final Decoder UTF_8 = Decoder.forCharset(StandardCharsets.UTF_8);
+
+    private static final PathRouter<String> ROUTER = PathRouter.<String>builder()
+            .add("/", "root")
+            .add("/users", "users")
+            .add("/users/", "users-slash")
+            .add("/users/me", "me")
+            .add("/users/{id}", "user")
+            .add("/users/{id}/orders/{orderId}", "order")
+            .add("/users/{userId}/orders/latest", "latest")
+            .add("/users/**", "users-rest")
+            .add("/static/**", "static")
+            .add("/files/{name}/raw", "raw")
+            .add("/files/**", "files")
+            .add("/café/{x}", "cafe")
+            .build();
+
+    private static String route(final String path) {
+        final PathRouter.Match<String> m = ROUTER.match(path);
+        return m == null ? null : m.value();
+    }
+
+    @Test
+    public void literalsBeatVariablesBeatRest() {
+        assertEquals("me", route("/users/me"));
+        assertEquals("user", route("/users/42"));
+        assertEquals("latest", route("/users/42/orders/latest"));
+        assertEquals("order", route("/users/42/orders/7"));
+        assertEquals("users-rest", route("/users/42/orders"));
+        assertEquals("users-rest", route("/users/42/profile/photo"));
+    }
+
+    @Test
+    public void rootAndSlashes() {
+        assertEquals("root", route("/"));
+        assertEquals("root", route(""));
+        assertEquals("users", route("/users"));
+        assertEquals("users", route("users"));
+        assertEquals("users-slash", route("/users/"));
+        assertNull(route("/nothing"));
+        assertNull(route("//users"));
+    }
+
+    @Test
+    public void backtracksToVariableAndRest() {
+        assertEquals("raw", route("/files/a.txt/raw"));
+        assertEquals("files", route("/files/a.txt/other"));
+        assertEquals("files", route("/files/a.txt"));
+        assertEquals("files", route("/files//raw"));
+    }
+
+    @Test
+    public void variablesWithOffsets() {
+        final String path = "/users/42/orders/7";
+        final PathRouter.Match<String> m = ROUTER.match(path);
+        assertEquals("/users/{id}/orders/{orderId}", m.template());
+        assertEquals(2, m.variableCount());
+        assertEquals("id", m.variableName(0));
+        assertEquals(7, m.variableStart(0));
+        assertEquals(9, m.variableEnd(0));
+        assertEquals("7", m.variable("orderId"));
+        assertNull(m.variable("missing"));
+        assertEquals(Map.of("id", "42", "orderId", "7"), m.variables());
+        assertEquals(-1, m.restStart());
+        assertNull(m.rest());
+        assertThrows(IndexOutOfBoundsException.class, () -> m.variableStart(2));
+        assertEquals("userId", ROUTER.match("/users/1/orders/latest").variableName(0));
+    }
+
+    @Test
+    public void rest() {
+        final PathRouter.Match<String> m = ROUTER.match("/static/css/site.css");
+        assertEquals(8, m.restStart());
+        assertEquals("css/site.css", m.rest());
+        assertEquals("", ROUTER.match("/static").rest());
+        assertEquals("", ROUTER.match("/static/").rest());
+    }
+
+    @Test
+    public void encodedPaths() {
+        final String raw = "GET /users/a%2Fb/orders/%E2%98%BA HTTP/1.1";
+        final PathRouter.Match<String> m = ROUTER.matchEncoded(raw, 4, 33, UTF_8);
+        assertEquals("order", m.value());
+        assertEquals("a/b", m.variable("id"));
+        assertEquals(11, m.variableStart(0));
+        assertEquals(16, m.variableEnd(0));
+        assertEquals("☺", m.variable(1));
+        assertEquals("me", ROUTER.matchEncoded("/users/%6De", 0, 11, UTF_8).value());
+        assertEquals("cafe", ROUTER.matchEncoded("/caf%C3%A9/1", 0, 12, UTF_8).value());
+        assertEquals("a b", ROUTER.matchEncoded("/static/a%20b", 0, 13, UTF_8).rest());
+    }
+
+    @Test
+    public void builders() {
+        assertEquals("cafe", ROUTER.match(UrlBuilder.fromString("http://h/caf%C3%A9/x")).value());
+        assertEquals("root", ROUTER.match(UrlBuilder.fromString("http://h")).value());
+    }
+
+    @Test
+    public void buildersKeepTheirSegments() {
+        final PathRouter<String> router = PathRouter.<String>builder()
+                .add("/files/{name}", "file")
+                .add("/files/{dir}/{name}", "nested")
+                .build();
+        final PathRouter.Match<String> m = router.match(UrlBuilder.fromString("http://h/files/a%2Fb"));
+        assertEquals("file", m.value());
+        assertEquals("a/b", m.variable("name"));
+        assertEquals("nested", router.match(UrlBuilder.fromString("http://h/files/a/b")).value());
+        assertEquals("file", router.match(UrlBuilder.empty().withPath("/files").addPathSegment("a/b")).value());
+        assertEquals("é", router.match(UrlBuilder.fromString("http://h/files/%C3%A9")).variable(0));
+    }
+
+    @Test
+    public void invalidTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> PathRouter.builder().add("/a/**/b", 1));
+        assertThrows(IllegalArgumentException.class, () -> PathRouter.builder().add("/a/{x}", 1).add("/a/{y}", 2));
+        assertThrows(IllegalArgumentException.class, () -> PathRouter.builder().add("/a/**", 1).add("a/**", 2));
+    }
+
+    @Test
+    public void manyTemplates() {
+        final PathRouter.Builder<Integer> builder = PathRouter.builder();
+        for (int i = 0; i < 2000; i++) {
+            builder.add("/api/v" + (i % 10) + "/resource" + i + "/{id}", i);
+        }
+        final PathRouter<Integer> router = builder.build();
+        for (int i = 0; i < 2000; i += 97) {
+            final PathRouter.Match<Integer> m = router.match("/api/v" + (i % 10) + "/resource" + i + "/x" + i);
+            assertEquals(i, m.value());
+            assertEquals("x" + i, m.variable("id"));
+        }
+        assertNull(router.match("/api/v1/resource2/x"));
+    }
+
+}
@@ -0,0 +1,109 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.PublicSuffixList;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PublicSuffixListTest {
+
+    private static final PublicSuffixList LIST = load();
+
+    private static PublicSuffixList load() {
+        try (Reader reader = new InputStreamReader(
+                PublicSuffixListTest.class.getResourceAsStream("public_suffix_list.dat"), StandardCharsets.UTF_8)) {
+            return PublicSuffixList.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void registrableDomains() {
+        assertEquals("example.com", LIST.registrableDomain("example.com"));
+        assertEquals("example.com", LIST.registrableDomain("www.shop.example.com"));
+        assertEquals("example.co.uk", LIST.registrableDomain("www.example.co.uk"));
+        assertEquals("co.uk", LIST.publicSuffix("www.example.co.uk"));
+        assertEquals("Example.CO.UK", LIST.registrableDomain("www.Example.CO.UK"));
+        assertNull(LIST.registrableDomain("co.uk"));
+        assertNull(LIST.registrableDomain("com"));
+        assertEquals("example.github.io", LIST.registrableDomain("a.example.github.io"));
+        assertEquals("x.blogspot.com", LIST.registrableDomain("x.blogspot.com"));
+    }
+
+    @Test
+    public void unlistedSuffixes() {
+        assertEquals("example.test", LIST.registrableDomain("a.b.example.test"));
+        assertEquals("test", LIST.publicSuffix("a.b.example.test"));
+        assertNull(LIST.registrableDomain("localhost"));
+        assertEquals("localhost", LIST.publicSuffix("localhost"));
+    }
+
+    @Test
+    public void wildcardsAndExceptions() {
+        assertEquals("b.c.ck", LIST.registrableDomain("a.b.c.ck"));
+        assertEquals("c.ck", LIST.publicSuffix("a.b.c.ck"));
+        assertNull(LIST.registrableDomain("c.ck"));
+        assertEquals("www.ck", LIST.registrableDomain("www.ck"));
+        assertEquals("www.ck", LIST.registrableDomain("a.www.ck"));
+        assertEquals("ck", LIST.publicSuffix("www.ck"));
+        assertEquals("x.foo.kawasaki.jp", LIST.registrableDomain("a.x.foo.kawasaki.jp"));
+        assertEquals("city.kawasaki.jp", LIST.registrableDomain("www.city.kawasaki.jp"));
+        assertTrue(LIST.isPublicSuffix("foo.kawasaki.jp"));
+        assertFalse(LIST.isPublicSuffix("city.kawasaki.jp"));
+    }
+
+    @Test
+    public void internationalizedDomains() {
+        assertEquals("例子.公司.cn", LIST.registrableDomain("www.例子.公司.cn"));
+        assertEquals("xn--fsqu00a.xn--55qx5d.cn", LIST.registrableDomain("www.xn--fsqu00a.xn--55qx5d.cn"));
+        assertEquals("例子.中国", LIST.registrableDomain("例子.中国"));
+        assertEquals("中国", LIST.publicSuffix("例子.中国"));
+    }
+
+    @Test
+    public void notDomainNames() {
+        assertNull(LIST.registrableDomain("192.168.1.1"));
+        assertNull(LIST.registrableDomain("[::1]"));
+        assertNull(LIST.registrableDomain(""));
+        assertNull(LIST.registrableDomain(".com"));
+        assertNull(LIST.registrableDomain("a..com"));
+        assertEquals("example.com", LIST.registrableDomain("www.example.com."));
+    }
+
+    @Test
+    public void offsetsWithoutCopying() {
+        final String line = "Host: www.example.co.uk\r\n";
+        assertEquals(10, LIST.registrableDomainStart(line, 6, 23));
+        assertEquals(18, LIST.publicSuffixStart(line, 6, 23));
+        assertEquals(-1, LIST.registrableDomainStart(line, 18, 23));
+        final UrlBuilder url = UrlBuilder.fromString("https://a.b.example.com/x");
+        assertEquals(4, LIST.registrableDomainStart(url.hostName, 0, url.hostName.length()));
+    }
+
+    @Test
+    public void compiledRoundTrip() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LIST.writeCompiled(out);
+        final PublicSuffixList read = PublicSuffixList.readCompiled(new ByteArrayInputStream(out.toByteArray()));
+        for (final String host : List.of("www.example.co.uk", "a.b.c.ck", "www.ck", "www.city.kawasaki.jp",
+                "www.例子.公司.cn", "example.test", "com")) {
+            assertEquals(LIST.registrableDomain(host), read.registrableDomain(host), host);
+            assertEquals(LIST.publicSuffix(host), read.publicSuffix(host), host);
+        }
+        assertThrows(IOException.class,
+                () -> PublicSuffixList.readCompiled(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 })));
+    }
+
+    @Test
+    public void rulesFromCode() {
+        final PublicSuffixList list = PublicSuffixList.of(List.of("com", "*.compute.amazonaws.com"));
+        assertEquals("a.eu-west-1.compute.amazonaws.com", list.registrableDomain("b.a.eu-west-1.compute.amazonaws.com"));
+        assertEquals("amazonaws.com", list.registrableDomain("x.amazonaws.com"));
+    }
+
+}
@@ -0,0 +1,95 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestTargetTest {
+
+    private static UrlBuilder target(final String requestTarget) {
+        final byte[] line = ("GET " + requestTarget + " HTTP/1.1\r\n").getBytes(US_ASCII);
+        return UrlBuilder.fromRequestTarget(line, 4, requestTarget.length());
+    }
+
+    @Test
+    public void originForm() {
+        final UrlBuilder ub = target("/where%20now?q=%E2%82%AC&x=a+b");
+        assertNull(ub.scheme);
+        assertNull(ub.hostName);
+        assertEquals("/where now", ub.path);
+        assertEquals("€", ub.queryParameters.get("q").get(0));
+        assertEquals("a b", ub.queryParameters.get("x").get(0));
+        assertEquals("/where%20now?q=%E2%82%AC&x=a%20b", ub.toString());
+    }
+
+    @Test
+    public void originFormWithDoubleSlashIsAPath() {
+        final UrlBuilder ub = target("//not-a-host/x");
+        assertNull(ub.hostName);
+        assertEquals("//not-a-host/x", ub.path);
+    }
+
+    @Test
+    public void absoluteForm() {
+        final UrlBuilder ub = target("http://www.example.org:8080/pub/WWW/TheProject.html");
+        assertEquals("http", ub.scheme);
+        assertEquals("www.example.org", ub.hostName);
+        assertEquals(8080, ub.port);
+        assertEquals("/pub/WWW/TheProject.html", ub.path);
+    }
+
+    @Test
+    public void authorityForm() {
+        final UrlBuilder ub = target("www.example.com:443");
+        assertNull(ub.scheme);
+        assertEquals("www.example.com", ub.hostName);
+        assertEquals(443, ub.port);
+        assertEquals("", ub.path);
+
+        final UrlBuilder ipv6 = target("[::1]:8443");
+        assertEquals("[::1]", ipv6.hostName);
+        assertEquals(8443, ipv6.port);
+    }
+
+    @Test
+    public void asteriskForm() {
+        final UrlBuilder ub = target("*");
+        assertEquals("*", ub.path);
+        assertNull(ub.hostName);
+    }
+
+    @Test
+    public void byteBufferKeepsPosition() {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(32);
+        direct.put("XX/a%C3%A4?b=%E4".getBytes(US_ASCII)).flip().position(2);
+        final UrlBuilder utf8 = UrlBuilder.fromRequestTarget(direct, UTF_8);
+        assertEquals("/aä", utf8.path);
+        assertEquals(2, direct.position());
+        final UrlBuilder latin1 = UrlBuilder.fromRequestTarget(direct.duplicate(), ISO_8859_1);
+        assertEquals("ä", latin1.queryParameters.get("b").get(0));
+    }
+
+    @Test
+    public void invalidTargets() {
+        final byte[] bytes = "GET /a%zz HTTP/1.1".getBytes(US_ASCII);
+        final ParseResult result = UrlBuilder.tryParseRequestTarget(bytes, 4, 5, Decoder.forCharset(UTF_8));
+        assertEquals(ParseResult.Error.INVALID_PERCENT_ENCODING, result.error());
+        assertEquals(6, result.errorOffset());
+        assertThrows(NumberFormatException.class, () -> target("/a%zz"));
+        assertThrows(NumberFormatException.class, () -> target("http://a:x/"));
+        assertThrows(IndexOutOfBoundsException.class, () -> UrlBuilder.fromRequestTarget(bytes, 10, 10));
+    }
+
+    @Test
+    public void matchesFromString() {
+        final String[] targets = {"/", "/a/b;c?d=e&f", "http://u%20ser@h/p#frag", "/%4"};
+        for (final String t : targets) {
+            assertEquals(UrlBuilder.fromString(t).toString(), target(t).toString(), t);
+        }
+    }
+
+}
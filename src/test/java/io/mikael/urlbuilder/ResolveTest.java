@@ -0,0 +1,120 @@
+package io.mikael.urlbuilder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The reference resolution examples from RFC 3986 section 5.4.
+ */
+public class ResolveTest {
+
+    private static final UrlBuilder BASE = UrlBuilder.fromString("http://a/b/c/d;p?q");
+
+    private static final String[][] NORMAL_EXAMPLES = {
+            { "g:h", "g:h" },
+            { "g", "http://a/b/c/g" },
+            { "./g", "http://a/b/c/g" },
+            { "g/", "http://a/b/c/g/" },
+            { "/g", "http://a/g" },
+            { "//g", "http://g" },
+            { "?y", "http://a/b/c/d;p?y" },
+            { "g?y", "http://a/b/c/g?y" },
+            { "#s", "http://a/b/c/d;p?q#s" },
+            { "g#s", "http://a/b/c/g#s" },
+            { "g?y#s", "http://a/b/c/g?y#s" },
+            { ";x", "http://a/b/c/;x" },
+            { "g;x", "http://a/b/c/g;x" },
+            { "g;x?y#s", "http://a/b/c/g;x?y#s" },
+            { "", "http://a/b/c/d;p?q" },
+            { ".", "http://a/b/c/" },
+            { "./", "http://a/b/c/" },
+            { "..", "http://a/b/" },
+            { "../", "http://a/b/" },
+            { "../g", "http://a/b/g" },
+            { "../..", "http://a/" },
+            { "../../", "http://a/" },
+            { "../../g", "http://a/g" },
+    };
+
+    private static final String[][] ABNORMAL_EXAMPLES = {
+            { "../../../g", "http://a/g" },
+            { "../../../../g", "http://a/g" },
+            { "/./g", "http://a/g" },
+            { "/../g", "http://a/g" },
+            { "g.", "http://a/b/c/g." },
+            { ".g", "http://a/b/c/.g" },
+            { "g..", "http://a/b/c/g.." },
+            { "..g", "http://a/b/c/..g" },
+            { "./../g", "http://a/b/g" },
+            { "./g/.", "http://a/b/c/g/" },
+            { "g/./h", "http://a/b/c/g/h" },
+            { "g/../h", "http://a/b/c/h" },
+            { "g;x=1/./y", "http://a/b/c/g;x=1/y" },
+            { "g;x=1/../y", "http://a/b/c/y" },
+            { "g#s/./x", "http://a/b/c/g#s/./x" },
+            { "g#s/../x", "http://a/b/c/g#s/../x" },
+            { "http:g", "http:g" },
+    };
+
+    @Test
+    public void normalExamples() {
+        for (final String[] example : NORMAL_EXAMPLES) {
+            assertEquals(example[1], BASE.resolve(example[0]).toString(), example[0]);
+        }
+    }
+
+    @Test
+    public void abnormalExamples() {
+        for (final String[] example : ABNORMAL_EXAMPLES) {
+            assertEquals(example[1], BASE.resolve(example[0]).toString(), example[0]);
+        }
+    }
+
+    @Test
+    public void queryIsNotNormalized() {
+        final UrlBuilder resolved = BASE.resolve("g?y/./x");
+        assertEquals("/b/c/g", resolved.path);
+        assertEquals("y/./x", resolved.queryParameters.keySet().iterator().next());
+    }
+
+    @Test
+    public void resolveAllMatchesResolve() {
+        final List<String> refs = Arrays.asList("g", "../g", "//g", "?y", "#s", "/a%20b/./c");
+        final List<UrlBuilder> resolved = BASE.resolveAll(refs);
+        assertEquals(refs.size(), resolved.size());
+        for (int i = 0; i < refs.size(); i++) {
+            assertEquals(BASE.resolve(refs.get(i)).toString(), resolved.get(i).toString());
+        }
+        assertEquals("/a b/c", resolved.get(5).path);
+    }
+
+    @Test
+    public void encodedSlashStaysInItsSegment() {
+        final UrlBuilder resolved = BASE.resolve("a%2Fb/../c");
+        assertEquals("http://a/b/c/c", resolved.toString());
+        assertEquals(Arrays.asList("", "b", "c", "a/b"), BASE.resolve("a%2Fb").urlPath.segments());
+        assertEquals("http://a/b/c/a%2Fb", BASE.resolve("a%2Fb").toString());
+        assertEquals("http://a/x%2Fy/g", BASE.resolve("/x%2Fy/./g").toString());
+
+        final UrlBuilder base = UrlBuilder.fromString("http://a/b%2Fc/d");
+        assertEquals("http://a/b%2Fc/g", base.resolve("g").toString());
+        assertEquals("http://a/g", base.resolve("../g").toString());
+        assertEquals("http://h/p%2Fq", base.resolve("//h/p%2Fq").toString());
+    }
+
+    @Test
+    public void emptyBasePathWithAuthority() {
+        assertEquals("http://a/g", UrlBuilder.fromString("http://a").resolve("g").toString());
+    }
+
+    @Test
+    public void keepsEncoder() {
+        assertEquals("http://a/b/c/%E4",
+                BASE.encodeAs("ISO-8859-1").resolve("%C3%A4").toString());
+    }
+
+}
@@ -1,10 +1,13 @@
 package io.mikael.urlbuilder;
 
+import io.mikael.urlbuilder.util.Decoder;
+import io.mikael.urlbuilder.util.Encoder;
+import io.mikael.urlbuilder.util.UrlParameterMultimap;
 import org.junit.jupiter.api.Test;
 
 import java.net.*;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -62,6 +65,14 @@ public class SimpleUrlTest {
                         .encodeAs(StandardCharsets.UTF_8).toString());
     }
 
+    @Test
+    public void sharedCodecsTest() {
+        assertSame(Encoder.forCharset(StandardCharsets.UTF_8), Encoder.forCharset("utf-8"));
+        assertSame(Decoder.forCharset(StandardCharsets.ISO_8859_1), Decoder.forCharset("ISO-8859-1"));
+        assertEquals(StandardCharsets.UTF_16, Decoder.forCharset("UTF-16").charset());
+        assertThrows(IllegalArgumentException.class, () -> Encoder.forCharset("no-such-charset"));
+    }
+
     @Test
     public void parameterTest() {
         final UrlBuilder ub1 = UrlBuilder.fromString("?a=b&a=c&b=c");
@@ -186,6 +197,21 @@ public class SimpleUrlTest {
         assertEquals("http://foo/a%7Bb", UrlBuilder.fromUri(new URI("http://foo/a%7Bb")).toString());
     }
 
+    @Test
+    public void fragmentFromURIIsDecodedOnce() throws URISyntaxException {
+        assertEquals("a%23b", UrlBuilder.fromUri(new URI("http://foo/#a%2523b")).fragment);
+        assertEquals("bobby droptables", UrlBuilder.fromUri(new URI("http://bobby%20droptables@foo/")).userInfo);
+    }
+
+    @Test
+    public void uriAndUrlAreCached() throws Exception {
+        final UrlBuilder ub = UrlBuilder.fromString("http://foo/a%20b?c=d#e");
+        assertSame(ub.toString(), ub.toString());
+        assertSame(ub.toUri(), ub.toUri());
+        assertEquals(new URI("http://foo/a%20b?c=d#e"), ub.toUri());
+        assertEquals("http://foo/a%20b?c=d#e", ub.toUrl().toString());
+    }
+
     @Test
     public void testRemoveParameter() {
         UrlBuilder b = UrlBuilder.fromString("http://somehost.com/page?parameter1=value1");
@@ -270,5 +296,44 @@ public class SimpleUrlTest {
         assertEquals("http://somehost.com/page/a/1/b/2/c/3", b.toString());
     }
 
-}
+    @Test
+    public void bulkParameterOperations() {
+        final UrlBuilder b = UrlBuilder.fromString("http://h/?a=1&utm_source=x&b=2&utm_medium=y&a=3");
+        assertEquals("http://h/?a=1&b=2&a=3",
+                b.removeParametersIf((key, value) -> key.startsWith("utm_")).toString());
+        assertSame(b, b.removeParametersIf((key, value) -> false));
+
+        final Map<String, List<String>> more = new LinkedHashMap<>();
+        more.put("c", Arrays.asList("4", "5"));
+        more.put("a", Collections.singletonList("6"));
+        assertEquals("http://h/?a=1&utm_source=x&b=2&utm_medium=y&a=3&c=4&c=5&a=6",
+                b.addParameters(more).toString());
+        assertEquals("http://h/?utm_source=x&b=2&utm_medium=y&c=4&c=5&a=6",
+                b.setParameters(more).toString());
+
+        final UrlParameterMultimap other = UrlParameterMultimap.newMultimap()
+                .add("b", "2").add("d", null).add("a", "1").add("a", "7");
+        assertEquals("http://h/?a=1&utm_source=x&b=2&utm_medium=y&a=3&d&a=7",
+                b.mergeParameters(other).toString());
+        final UrlParameterMultimap repeated = UrlParameterMultimap.newMultimap()
+                .add("e", "1").add("e", "1").add("a", "1").add("a", "1");
+        assertEquals("http://h/?a=1&utm_source=x&b=2&utm_medium=y&a=3&e=1&e=1",
+                b.mergeParameters(repeated).toString());
+        assertSame(b, b.mergeParameters(UrlParameterMultimap.newMultimap().add("b", "2")));
+        final List<String> seen = new ArrayList<>();
+        b.removeParametersIf((key, value) -> seen.add(key + "=" + value) && false);
+        assertEquals(Arrays.asList("a=1", "utm_source=x", "b=2", "utm_medium=y", "a=3"), seen);
+    }
 
+    @Test
+    public void bulkAddReusesEncodedQuery() {
+        final UrlBuilder b = UrlBuilder.fromString("http://h/?q=a%20b");
+        b.toString();
+        final Map<String, List<String>> more = new LinkedHashMap<>();
+        more.put("x y", Arrays.asList("1", null));
+        assertEquals("http://h/?q=a%20b&x%20y=1&x%20y", b.addParameters(more).toString());
+        assertEquals("http://h/?q=a%20b&x%20y=1&x%20y",
+                UrlBuilder.fromString("http://h/?q=a%20b").addParameters(more).toString());
+    }
+
+}
@@ -0,0 +1,102 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Encoder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingEncoderTest {
+
+    private static final Encoder UTF_8 = Encoder.forCharset(StandardCharsets.UTF_8);
+
+    /// Returns at most `chunk` chars from each read, to split the input at awkward places.
+    private static Reader chunked(final String input, final int chunk) {
+        return new FilterReader(new StringReader(input)) {
+            @Override
+            public int read(final char[] buf, final int off, final int len) throws IOException {
+                return super.read(buf, off, Math.min(len, chunk));
+            }
+        };
+    }
+
+    private static String streamed(final Encoder encoder, final Reader input) throws IOException {
+        final StringWriter out = new StringWriter();
+        final long written = encoder.encodeQueryElement(input, out);
+        assertEquals(out.getBuffer().length(), written);
+        return out.toString();
+    }
+
+    private static String randomText(final Random random, final int codePoints) {
+        final int[] pool = { 'a', 'Z', '5', '-', '~', ' ', '&', '=', '+', '%', '/', 0xE4, 0x20AC, 0x1F600, 0x10348 };
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < codePoints; i++) {
+            sb.appendCodePoint(pool[random.nextInt(pool.length)]);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void matchesStringEncodingAcrossChunkBoundaries() throws IOException {
+        final Random random = new Random(50);
+        for (int round = 0; round < 200; round++) {
+            final String input = randomText(random, random.nextInt(40));
+            final String expected = UTF_8.encodeQueryElement(input);
+            for (final int chunk : new int[] { 1, 2, 3, 7 }) {
+                assertEquals(expected, streamed(UTF_8, chunked(input, chunk)), input);
+            }
+            assertEquals(expected, streamed(UTF_8, new StringReader(input)), input);
+        }
+    }
+
+    @Test
+    public void largeInputThroughFixedBuffers() throws IOException {
+        final String input = randomText(new Random(8192), 50_000);
+        final String expected = UTF_8.encodeQueryElement(input);
+        assertEquals(expected, streamed(UTF_8, chunked(input, 8191)));
+
+        final StringWriter out = new StringWriter();
+        UTF_8.encodeQueryElement(new StringBuilder(input), out);
+        assertEquals(expected, out.toString());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final long written = UTF_8.encodeQueryElement(input, Channels.newChannel(bytes));
+        assertEquals(expected, bytes.toString(StandardCharsets.US_ASCII));
+        assertEquals(expected.length(), written);
+    }
+
+    @Test
+    public void splitSurrogatePairIsOneCodePoint() throws IOException {
+        assertEquals("%F0%9F%98%80", streamed(UTF_8, chunked("😀", 1)));
+    }
+
+    @Test
+    public void loneSurrogatesAreReplacedLikeStrings() throws IOException {
+        for (final String input : new String[] { "a\uD83D", "\uD83Da", "\uDE00", "\uDE00\uD83D", "\uD83D😀" }) {
+            assertEquals(UTF_8.encodeQueryElement(input), streamed(UTF_8, chunked(input, 1)), input);
+        }
+    }
+
+    @Test
+    public void otherCharsets() throws IOException {
+        final Encoder latin1 = Encoder.forCharset(StandardCharsets.ISO_8859_1);
+        final String input = "ä € 😀";
+        assertEquals(latin1.encodeQueryElement(input), streamed(latin1, chunked(input, 1)));
+        assertEquals("%E4%20%3F%20%3F", streamed(latin1, new StringReader(input)));
+    }
+
+    @Test
+    public void emptyInput() throws IOException {
+        assertEquals("", streamed(UTF_8, new StringReader("")));
+    }
+
+}
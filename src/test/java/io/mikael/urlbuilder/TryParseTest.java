@@ -0,0 +1,143 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Decoder;
+import io.mikael.urlbuilder.util.ParameterFilter;
+import io.mikael.urlbuilder.util.UrlParameterMultimap;
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TryParseTest {
+
+    private static void assertInvalid(final String input, final ParseResult.Error error, final int offset) {
+        final ParseResult result = UrlBuilder.tryParse(input);
+        assertFalse(result.isValid(), input);
+        assertNull(result.builder());
+        assertEquals(error, result.error(), input);
+        assertEquals(offset, result.errorOffset(), input);
+    }
+
+    @Test
+    public void validInputMatchesFromString() {
+        final String[] inputs = {
+                "", "/", "http://www.example.com/a%20b/?q=%E2%82%AC&r#frag",
+                "https://bob:pw@[::1]:8080/x", "mailto:bob@example.com", "?q=%4", "/a%2/b"
+        };
+        for (final String input : inputs) {
+            final ParseResult result = UrlBuilder.tryParse(input);
+            assertTrue(result.isValid(), input);
+            assertNull(result.error());
+            assertEquals(-1, result.errorOffset());
+            assertEquals(UrlBuilder.fromString(input).toString(), result.builder().toString(), input);
+        }
+    }
+
+    @Test
+    public void invalidPercentEncoding() {
+        assertInvalid("http://a/b%ax", ParseResult.Error.INVALID_PERCENT_ENCODING, 10);
+        assertInvalid("/?a=1&b=%zz", ParseResult.Error.INVALID_PERCENT_ENCODING, 8);
+        assertInvalid("/?a=b%4=c", ParseResult.Error.INVALID_PERCENT_ENCODING, 5);
+        assertInvalid("/?q=%+1", ParseResult.Error.INVALID_PERCENT_ENCODING, 4);
+        assertInvalid("http://bob%g0@a/", ParseResult.Error.INVALID_PERCENT_ENCODING, 10);
+    }
+
+    @Test
+    public void invalidPort() {
+        assertInvalid("http://a:8o/", ParseResult.Error.INVALID_PORT, 10);
+        assertInvalid("http://a:-1/", ParseResult.Error.INVALID_PORT, 9);
+        assertInvalid("http://a:99999999999/", ParseResult.Error.INVALID_PORT, 9);
+        assertInvalid("http://[::1]x:80/", ParseResult.Error.INVALID_PORT, 13);
+    }
+
+    @Test
+    public void unclosedIpLiteral() {
+        assertInvalid("http://[::1/x", ParseResult.Error.UNCLOSED_IP_LITERAL, 7);
+        assertInvalid("http://a]b[c/", ParseResult.Error.UNCLOSED_IP_LITERAL, 10);
+    }
+
+    @Test
+    public void fromStringThrowsForTheSameInputs() {
+        assertThrows(NumberFormatException.class, () -> UrlBuilder.fromString("http://a/b%ax"));
+        assertThrows(NumberFormatException.class, () -> UrlBuilder.fromString("http://a:8o/"));
+        assertThrows(IllegalArgumentException.class, () -> UrlBuilder.fromString("http://[::1/x"));
+    }
+
+    @Test
+    public void parsesSubRanges() {
+        final StringBuilder line = new StringBuilder("GET http://a/b%20c?q=%E2%82%AC&r=1#f HTTP/1.1");
+        final UrlBuilder ub = UrlBuilder.fromString(line, 4, line.length() - 9);
+        assertEquals("http://a/b%20c?q=%E2%82%AC&r=1#f", ub.toString());
+        assertEquals("/b c", ub.path);
+        assertEquals("€", ub.queryParameters.get("q").get(0));
+
+        final ParseResult invalid = UrlBuilder.tryParse(CharBuffer.wrap("xx /%zz yy"), 3, 7, Decoder.forCharset(UTF_8));
+        assertEquals(ParseResult.Error.INVALID_PERCENT_ENCODING, invalid.error());
+        assertEquals(4, invalid.errorOffset());
+        assertThrows(IndexOutOfBoundsException.class, () -> UrlBuilder.fromString("abc", 2, 4));
+    }
+
+    @Test
+    public void decoderSubRanges() {
+        final Decoder decoder = Decoder.forCharset(UTF_8);
+        assertEquals("a b", decoder.urlDecode("[a+b]", 1, 4, true));
+        assertEquals("ä", decoder.urlDecode("x%C3%A4x", 1, 7, false));
+        assertEquals("%4", decoder.urlDecode("%4%41", 0, 2, false));
+        final String plain = "abc";
+        assertSame(plain, decoder.urlDecode(plain, 0, 3, true));
+        final UrlParameterMultimap params = decoder.parseQueryString("?a=1&b=%20&&c#", 1, 13);
+        assertEquals("a=1&b=%20&&c".split("&").length, params.size());
+        assertEquals(" ", params.get("b").get(0));
+        assertEquals("/a b/%2", decoder.decodePath(" /a%20b/%2 ", 1, 10));
+    }
+
+    /// Decodes as usual, then upper-cases, to show where the override is called.
+    static final class UpperCaseDecoder extends Decoder {
+        UpperCaseDecoder() {
+            super(UTF_8);
+        }
+
+        @Override
+        public String urlDecode(final String input, final boolean decodePlusAsSpace) {
+            return super.urlDecode(input, decodePlusAsSpace).toUpperCase(Locale.ROOT);
+        }
+    }
+
+    @Test
+    public void subRangesUseOverriddenUrlDecode() {
+        final Decoder decoder = new UpperCaseDecoder();
+        assertEquals("A B", decoder.urlDecode("[a+b]", 1, 4, true));
+        final UrlParameterMultimap params = decoder.parseQueryString("?a=x%20y&b#", 1, 10);
+        assertEquals(Arrays.asList("X Y"), params.get("A"));
+        assertTrue(params.containsKey("B"));
+        assertEquals(1, decoder.parseQueryString("a=1&b=2", 0, 7, ParameterFilter.of("A")).size());
+        assertEquals("/A B/C", decoder.decodePath(" /a%20b/c ", 1, 9));
+        assertEquals(Arrays.asList("", "A/B"), decoder.decodePathSegments("/a%2fb").segments());
+        assertEquals("ä", Decoder.forCharset(UTF_8).urlDecode("%C3%A4", 0, 6, false));
+    }
+
+    @Test
+    public void parserUsesOverriddenUrlDecode() {
+        final String input = "http://bob:pw@host/a%20b/c%2Fd?k=v+w#f";
+        for (final UrlBuilder url : Arrays.asList(UrlBuilder.fromString(input, new UpperCaseDecoder()),
+                UrlBuilder.tryParse(input, new UpperCaseDecoder()).builder())) {
+            assertEquals("BOB:PW", url.userInfo);
+            assertEquals("/A B/C/D", url.path);
+            assertEquals(Arrays.asList("", "A B", "C/D"), url.urlPath.segments());
+            assertEquals(Arrays.asList("V W"), url.queryParameters.get("K"));
+        }
+    }
+
+    @Test
+    public void trailingEmptyPairsAreDropped() {
+        final Decoder decoder = Decoder.forCharset(UTF_8);
+        assertEquals(1, decoder.parseQueryString("a&&&").size());
+        assertEquals(0, decoder.parseQueryString("&&").size());
+        assertEquals(3, decoder.parseQueryString("&&a").size());
+    }
+
+}
@@ -0,0 +1,92 @@
+package io.mikael.urlbuilder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlBuilderCacheTest {
+
+    @Test
+    public void repeatedInputsShareOneInstance() {
+        final UrlBuilderCache cache = UrlBuilderCache.withMaximumSize(10);
+        final UrlBuilder first = cache.fromString("http://h/a?q=%E4");
+        assertSame(first, cache.fromString("http://h/a?q=%E4"));
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+
+        final UrlBuilder latin1 = cache.fromString("http://h/a?q=%E4", ISO_8859_1);
+        assertNotSame(first, latin1);
+        assertEquals("ä", latin1.queryParameters.get("q").get(0));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void evictsUnreferencedEntriesFirst() {
+        final UrlBuilderCache cache = UrlBuilderCache.withMaximumSize(3);
+        final UrlBuilder hot = cache.fromString("http://h/hot");
+        for (int i = 0; i < 100; i++) {
+            assertSame(hot, cache.fromString("http://h/hot"));
+            cache.fromString("http://h/cold" + i);
+        }
+        assertEquals(3, cache.size());
+        assertTrue(cache.evictionCount() >= 97);
+        assertSame(hot, cache.fromString("http://h/hot"));
+    }
+
+    @Test
+    public void boundedByWeight() {
+        final UrlBuilderCache cache = UrlBuilderCache.withMaximumWeight(40);
+        for (int i = 0; i < 10; i++) {
+            cache.fromString("http://h/" + i + "0000000");
+        }
+        assertEquals(2, cache.size());
+        cache.fromString("http://h/" + "x".repeat(100));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void invalidInputsAreNotCached() {
+        final UrlBuilderCache cache = UrlBuilderCache.withMaximumSize(10);
+        assertThrows(NumberFormatException.class, () -> cache.fromString("http://h/%zz"));
+        final ParseResult result = cache.tryParse("http://h:x/");
+        assertEquals(ParseResult.Error.INVALID_PORT, result.error());
+        assertEquals(0, cache.size());
+        assertTrue(cache.tryParse("http://h/").isValid());
+        assertSame(cache.fromString("http://h/"), cache.tryParse("http://h/").builder());
+    }
+
+    @Test
+    public void concurrentUseStaysBounded() throws Exception {
+        final UrlBuilderCache cache = UrlBuilderCache.withMaximumSize(64);
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int seed = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        final String url = "http://h/" + ((i * 31 + seed) % 200);
+                        assertEquals(url, cache.fromString(url).toString());
+                    }
+                }));
+            }
+            for (final Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(80_000, cache.hitCount() + cache.missCount());
+        assertTrue(cache.size() <= 64);
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+}
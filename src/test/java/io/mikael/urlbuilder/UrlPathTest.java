@@ -0,0 +1,76 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.Encoder;
+import io.mikael.urlbuilder.util.UrlPath;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlPathTest {
+
+    private static final Encoder ENCODER = Encoder.forCharset(UTF_8);
+
+    @Test
+    public void splitsAndJoins() {
+        for (final String path : Arrays.asList("", "/", "a", "/a/b/", "//a//", "/ä ö/")) {
+            assertEquals(path, UrlPath.of(path).toString(), path);
+            assertEquals(ENCODER.encodePath(path), UrlPath.of(path).encoded(ENCODER), path);
+        }
+        assertEquals(Arrays.asList("", "a", "b", ""), UrlPath.of("/a/b/").segments());
+        assertEquals(List.of(""), UrlPath.empty().segments());
+        assertNull(UrlPath.of(null));
+    }
+
+    @Test
+    public void appendSharesAndReplacesTrailingEmptySegment() {
+        final UrlPath base = UrlPath.of("/api/v1/");
+        final UrlPath users = base.append("users");
+        assertEquals("/api/v1/users", users.toString());
+        assertEquals("/api/v1/users/42", users.append("42").toString());
+        assertEquals("/x", UrlPath.empty().append("x").toString());
+        assertEquals(UrlPath.of("/api/v1/users"), users);
+        assertEquals(UrlPath.of("/api/v1/users").hashCode(), users.hashCode());
+    }
+
+    @Test
+    public void encodedSlashSurvives() {
+        final UrlBuilder ub = UrlBuilder.fromString("http://h/files/a%2Fb/c");
+        assertEquals(Arrays.asList("", "files", "a/b", "c"), ub.pathSegments());
+        assertEquals("/files/a/b/c", ub.path);
+        assertEquals("http://h/files/a%2Fb/c", ub.toString());
+        assertEquals("https://h/files/a%2Fb/c", ub.withScheme("https").toString());
+    }
+
+    @Test
+    public void addPathSegmentIsLiteral() {
+        final UrlBuilder ub = UrlBuilder.fromString("http://h/repos")
+                .addPathSegment("group/project")
+                .addPathSegment("issues")
+                .addPathSegment("a b");
+        assertEquals("http://h/repos/group%2Fproject/issues/a%20b", ub.toString());
+        assertEquals("http://h/x", UrlBuilder.empty().withScheme("http").withHost("h").addPathSegment("x").toString());
+    }
+
+    @Test
+    public void addPathSegmentsOnEmptyPathsAndSegments() {
+        assertEquals("/a/b", UrlBuilder.empty().addPathSegments("a", "", "b").toString());
+        assertEquals("http://h/a", UrlBuilder.fromString("http://h").addPathSegments("a").toString());
+        assertEquals("http://h/p/", UrlBuilder.fromString("http://h/p/").addPathSegments("").toString());
+        assertEquals("http://h/p/a/", UrlBuilder.fromString("http://h/p/").addPathSegments("/a/").toString());
+    }
+
+    @Test
+    public void deepPathsRenderEachSegmentOnce() {
+        UrlBuilder ub = UrlBuilder.fromString("http://h/");
+        for (int i = 0; i < 10_000; i++) {
+            ub = ub.addPathSegment("s" + i);
+        }
+        assertEquals(10_001, ub.pathSegments().size());
+        assertTrue(ub.toString().endsWith("/s9998/s9999"));
+    }
+
+}
@@ -0,0 +1,113 @@
+package io.mikael.urlbuilder;
+
+import io.mikael.urlbuilder.util.ParameterFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlRewriterTest {
+
+    private static final UrlRewriter REWRITER = UrlRewriter.builder()
+            .add(UrlRewriter.rule().host("a.example.com").pathPrefix("/old/")
+                    .setHost("c.example.com").replacePathPrefix("/new/").addParameter("moved", "1"))
+            .add(UrlRewriter.rule().host("A.example.com").pathPrefix("/old/deeper/")
+                    .setPath("/never"))
+            .add(UrlRewriter.rule().host("a.example.com").pathPrefix("/shop").parameter("lang", "fi")
+                    .setHost("kauppa.example.com").removeParameters("lang"))
+            .add(UrlRewriter.rule().host("a.example.com").pathPrefix("/shop")
+                    .setScheme("https").setPort(8443))
+            .add(UrlRewriter.rule().hasParameter("utm_source")
+                    .removeParameters(ParameterFilter.of("utm_*")).setFragment("tracked"))
+            .build();
+
+    private static String rewrite(final String url) {
+        return REWRITER.rewrite(UrlBuilder.fromString(url)).toString();
+    }
+
+    @Test
+    public void hostAndPathPrefix() {
+        assertEquals("https://c.example.com/new/x?q=1&moved=1", rewrite("https://a.example.com/old/x?q=1"));
+        assertEquals("https://c.example.com/new/deeper/y?moved=1", rewrite("https://A.EXAMPLE.com/old/deeper/y"));
+    }
+
+    @Test
+    public void replacePathPrefixKeepsSegments() {
+        assertEquals("https://c.example.com/new/a%2Fb/c?moved=1", rewrite("https://a.example.com/old/a%2Fb/c"));
+        final UrlRewriter partial = UrlRewriter.builder()
+                .add(UrlRewriter.rule().pathPrefix("/v1/it").replacePathPrefix("/v2/x/it"))
+                .build();
+        assertEquals("/v2/x/items%2Fall/7", partial.rewrite(UrlBuilder.fromString("/v1/items%2Fall/7")).toString());
+        assertEquals("/v2/x/it", partial.rewrite(UrlBuilder.fromString("/v1/it")).toString());
+    }
+
+    @Test
+    public void replacePathPrefixUsesPrefixSetAfterIt() {
+        final UrlRewriter rewriter = UrlRewriter.builder()
+                .add(UrlRewriter.rule().replacePathPrefix("/new").pathPrefix("/old"))
+                .build();
+        assertEquals("/new/x", rewriter.rewrite(UrlBuilder.fromString("/old/x")).toString());
+        assertEquals("/other", rewriter.rewrite(UrlBuilder.fromString("/other")).toString());
+    }
+
+    @Test
+    public void setHostDecodesLikeWithHost() {
+        final UrlRewriter rewriter = UrlRewriter.builder()
+                .add(UrlRewriter.rule().pathPrefix("/").setHost("xn--fsqu00a.xn--0zwm56d"))
+                .build();
+        final UrlBuilder url = UrlBuilder.fromString("http://a.example.com/x");
+        final UrlBuilder rewritten = rewriter.rewrite(url);
+        final UrlBuilder expected = url.withHost("xn--fsqu00a.xn--0zwm56d");
+        assertEquals("例子.测试", rewritten.hostName);
+        assertEquals(expected.hostName, rewritten.hostName);
+        assertEquals(expected.toString(), rewritten.toString());
+    }
+
+    @Test
+    public void firstMatchWins() {
+        assertEquals(0, REWRITER.match(UrlBuilder.fromString("http://a.example.com/old/deeper/")));
+        assertEquals(2, REWRITER.match(UrlBuilder.fromString("http://a.example.com/shop?lang=fi")));
+        assertEquals(3, REWRITER.match(UrlBuilder.fromString("http://a.example.com/shop?lang=en")));
+        assertEquals(0, REWRITER.match(UrlBuilder.fromString("http://a.example.com/old/?utm_source=x")));
+        assertEquals(4, REWRITER.match(UrlBuilder.fromString("http://a.example.com/other?utm_source=x")));
+    }
+
+    @Test
+    public void parameterConditions() {
+        assertEquals("http://kauppa.example.com/shop/item?id=3", rewrite("http://a.example.com/shop/item?lang=fi&id=3"));
+        assertEquals("https://a.example.com:8443/shop?lang=en", rewrite("http://a.example.com/shop?lang=en"));
+        assertEquals("http://b.example.com/?a=1#tracked", rewrite("http://b.example.com/?a=1&utm_source=x&utm_medium=y"));
+    }
+
+    @Test
+    public void noMatchReturnsSameBuilder() {
+        final UrlBuilder url = UrlBuilder.fromString("http://b.example.com/old/x");
+        assertEquals(-1, REWRITER.match(url));
+        assertSame(url, REWRITER.rewrite(url));
+        final UrlBuilder relative = UrlBuilder.fromString("/old/x");
+        assertSame(relative, REWRITER.rewrite(relative));
+    }
+
+    @Test
+    public void emptyRewriter() {
+        final UrlRewriter rewriter = UrlRewriter.builder().build();
+        assertEquals(0, rewriter.size());
+        assertEquals(-1, rewriter.match(UrlBuilder.fromString("http://a/")));
+    }
+
+    @Test
+    public void manyRules() {
+        final UrlRewriter.Builder builder = UrlRewriter.builder();
+        for (int host = 0; host < 100; host++) {
+            for (int path = 0; path < 100; path++) {
+                builder.add(UrlRewriter.rule().host("h" + host + ".example.com").pathPrefix("/p" + path + "/")
+                        .setPath("/" + host + "/" + path));
+            }
+        }
+        final UrlRewriter rewriter = builder.build();
+        assertEquals(10_000, rewriter.size());
+        assertEquals(4217, rewriter.match(UrlBuilder.fromString("http://h42.example.com/p17/x")));
+        assertEquals("http://h99.example.com/99/1", rewriter.rewrite(UrlBuilder.fromString("http://h99.example.com/p1/")).toString());
+        assertEquals(-1, rewriter.match(UrlBuilder.fromString("http://h42.example.com/p100/")));
+    }
+
+}
@@ -0,0 +1,115 @@
+package io.mikael.urlbuilder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlStoreTest {
+
+    private static List<String> sampleUrls() {
+        final List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            urls.add("https://www.example.com/products/" + i + "?ref=list");
+            urls.add("https://www.example.com/users/" + i);
+        }
+        urls.add("http://a/");
+        urls.add("https://ä.example.com/☺");
+        return urls;
+    }
+
+    @Test
+    public void roundTrip() {
+        final List<String> urls = sampleUrls();
+        final UrlStore store = UrlStore.of(urls);
+        final List<String> sorted = new ArrayList<>();
+        for (final String url : urls) {
+            sorted.add(UrlBuilder.fromString(url).toString());
+        }
+        Collections.sort(sorted);
+        assertEquals(sorted.size(), store.size());
+        final List<String> stored = new ArrayList<>();
+        store.strings().forEach(stored::add);
+        assertEquals(sorted, stored);
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(sorted.get(i), store.get(i));
+            assertEquals(i, store.indexOf(sorted.get(i)));
+        }
+    }
+
+    @Test
+    public void containsAndInsertionPoint() {
+        final UrlStore store = UrlStore.of(Arrays.asList("http://b/", "http://d/", "http://a/"));
+        assertTrue(store.contains("http://a/"));
+        assertTrue(store.contains(UrlBuilder.fromString("http://d/")));
+        assertFalse(store.contains("http://c/"));
+        assertEquals(-3, store.indexOf("http://c/"));
+        assertEquals(-1, store.indexOf("http://"));
+        assertEquals(-4, store.indexOf("http://e/"));
+    }
+
+    @Test
+    public void prefixQueries() {
+        final UrlStore store = UrlStore.of(sampleUrls());
+        assertEquals(1000, store.countWithPrefix("https://www.example.com/products/"));
+        assertEquals(111, store.countWithPrefix("https://www.example.com/users/1"));
+        assertEquals(0, store.countWithPrefix("https://www.example.org/"));
+        int count = 0;
+        for (final UrlBuilder ub : store.withPrefix("https://www.example.com/products/99")) {
+            assertTrue(ub.path.startsWith("/products/99"));
+            assertEquals("list", ub.queryParameters.get("ref").get(0));
+            count++;
+        }
+        assertEquals(11, count);
+    }
+
+    @Test
+    public void compressesSharedPrefixes() {
+        final List<String> urls = sampleUrls();
+        long plain = 0;
+        for (final String url : urls) {
+            plain += url.length();
+        }
+        assertTrue(UrlStore.of(urls).sizeInBytes() * 3 < plain);
+    }
+
+    @Test
+    public void storesRenderedForm() {
+        final List<String> urls = Arrays.asList("https://ä.example.com/☺", "http://a/b%2fc?x=%41", "http://a/b c");
+        final UrlStore store = UrlStore.of(urls);
+        final UrlStore fromBuilders = UrlStore.ofBuilders(Arrays.asList(UrlBuilder.fromString(urls.get(0)),
+                UrlBuilder.fromString(urls.get(1)), UrlBuilder.fromString(urls.get(2))));
+        assertEquals(3, store.size());
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(fromBuilders.get(i), store.get(i));
+        }
+        for (final String url : urls) {
+            assertTrue(store.contains(UrlBuilder.fromString(url)), url);
+            assertTrue(store.contains(UrlBuilder.fromString(url).toString()), url);
+        }
+        assertEquals(1, UrlStore.of(Arrays.asList("http://a/%7e", "http://a/~")).size());
+    }
+
+    @Test
+    public void duplicatesAreStoredOnce() {
+        final UrlStore store = UrlStore.builder().add("http://a/").add("http://a/").add("http://b/").build();
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void builderRequiresAscendingOrder() {
+        assertThrows(IllegalArgumentException.class,
+                () -> UrlStore.builder().add("http://b/").add("http://a/"));
+    }
+
+    @Test
+    public void emptyStore() {
+        final UrlStore store = UrlStore.of(Collections.emptyList());
+        assertEquals(0, store.size());
+        assertFalse(store.contains("http://a/"));
+        assertFalse(store.iterator().hasNext());
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(0));
+    }
+
+}
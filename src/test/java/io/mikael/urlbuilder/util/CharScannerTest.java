@@ -0,0 +1,89 @@
+package io.mikael.urlbuilder.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The scanner in use, vectorized when the tests run with the incubator module, must find
+ * exactly what the scalar one finds.
+ */
+public class CharScannerTest {
+
+    private static final int[] ALPHABET = "abcXYZ019-._~!$'()*,;:@/?&=+% ä☺😀".codePoints().toArray();
+
+    private static final CharScanner.AsciiSet UNRESERVED = CharScanner.AsciiSet.of(c -> Character.isLetterOrDigit(c)
+            || c == '-' || c == '.' || c == '_' || c == '~');
+
+    private static String randomString(final Random random, final int length, final double specialRate) {
+        final StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            if (random.nextDouble() < specialRate) {
+                sb.appendCodePoint(ALPHABET[random.nextInt(ALPHABET.length)]);
+            } else {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void matchesScalarScanner() {
+        final Random random = new Random(42);
+        final CharScanner scanner = CharScanner.INSTANCE;
+        for (int round = 0; round < 2000; round++) {
+            final String s = randomString(random, random.nextInt(2000), random.nextDouble() * 0.01);
+            final int from = s.isEmpty() ? 0 : random.nextInt(s.length());
+            final int to = from + random.nextInt(s.length() - from + 1);
+            assertEquals(CharScanner.SCALAR.indexOfEither(s, from, to, '%', '+'),
+                    scanner.indexOfEither(s, from, to, '%', '+'), s);
+            assertEquals(CharScanner.SCALAR.indexOfEither(s, from, to, '&', '&'),
+                    scanner.indexOfEither(s, from, to, '&', '&'), s);
+            assertEquals(CharScanner.SCALAR.indexOfUnsafe(s, from, to, UNRESERVED),
+                    scanner.indexOfUnsafe(s, from, to, UNRESERVED), s);
+        }
+    }
+
+    @Test
+    public void findsEveryPositionInLongRanges() {
+        final CharScanner scanner = CharScanner.INSTANCE;
+        final char[] chars = new char[1500];
+        Arrays.fill(chars, 'a');
+        for (int i = 0; i < chars.length; i++) {
+            for (final char c : new char[] { '%', '\u0080', 'ÿ', '耀', '￿', ' ', '{' }) {
+                chars[i] = c;
+                final String s = new String(chars);
+                assertEquals(i, scanner.indexOfUnsafe(s, 0, s.length(), UNRESERVED));
+                assertEquals(c == '%' ? i : s.length(), scanner.indexOfEither(s, 0, s.length(), '%', '+'));
+            }
+            chars[i] = 'a';
+        }
+    }
+
+    @Test
+    public void asciiSet() {
+        for (char c = 0; c < 300; c++) {
+            assertEquals(c < 128 && Rfc3986Util.isUnreserved(c),
+                    CharScanner.AsciiSet.of(i -> Rfc3986Util.isUnreserved((char) i)).contains(c));
+        }
+    }
+
+    @Test
+    public void longInputsRoundTrip() {
+        final Random random = new Random(7);
+        final Encoder encoder = Encoder.forCharset(StandardCharsets.UTF_8);
+        final Decoder decoder = Decoder.forCharset(StandardCharsets.UTF_8);
+        for (int round = 0; round < 200; round++) {
+            final String s = randomString(random, 300 + random.nextInt(3000), 0.02);
+            assertEquals(s, decoder.urlDecode(encoder.encodeQueryElement(s), true));
+            assertEquals(s, decoder.decodePath(encoder.encodePathSegment(s)));
+        }
+        final String plain = randomString(random, 5000, 0);
+        assertSame(plain, encoder.encodeQueryElement(plain));
+    }
+
+}
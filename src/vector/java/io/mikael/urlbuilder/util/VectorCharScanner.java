@@ -0,0 +1,131 @@
+/*
+Copyright 2014 Mikael Gueck
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.mikael.urlbuilder.util;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/// A [CharScanner] comparing a whole vector of chars at a time with the incubating Vector API.
+///
+/// Only loaded by [CharScanner] when `jdk.incubator.vector` is in the boot layer. Strings keep
+/// their chars private, so ranges of a [String] are copied chunk by chunk into a scratch array,
+/// one per thread, with [String#getChars(int, int, char[], int)], itself a vectorized copy. Ranges shorter than
+/// [#MIN_LENGTH], and other [CharSequence] types, are left to the scalar loop, which is faster
+/// there. Lookups in an [CharScanner.AsciiSet] pick each lane's 16-bit word of the map with a
+/// shuffle, then test the lane's bit in it with a variable shift.
+final class VectorCharScanner extends CharScanner {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    static final int MIN_LENGTH = 256;
+
+    private static final int CHUNK = 512;
+
+    private static final ThreadLocal<char[]> CHUNKS = ThreadLocal.withInitial(() -> new char[CHUNK]);
+
+    VectorCharScanner() {
+        if (SPECIES.length() < 8) {
+            throw new UnsupportedOperationException("Vectors of " + SPECIES.length() + " chars are too short");
+        }
+    }
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    int indexOfEither(final CharSequence input, final int from, final int to, final char a, final char b) {
+        if (to - from < MIN_LENGTH || !(input instanceof String)) {
+            return super.indexOfEither(input, from, to, a, b);
+        }
+        final String s = (String) input;
+        final char[] chunk = CHUNKS.get();
+        for (int base = from; base < to; base += CHUNK) {
+            final int n = Math.min(CHUNK, to - base);
+            s.getChars(base, base + n, chunk, 0);
+            final int bound = SPECIES.loopBound(n);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                final ShortVector v = ShortVector.fromCharArray(SPECIES, chunk, i);
+                final VectorMask<Short> hits = v.eq((short) a).or(v.eq((short) b));
+                if (hits.anyTrue()) {
+                    return base + i + hits.firstTrue();
+                }
+            }
+            for (; i < n; i++) {
+                if (chunk[i] == a || chunk[i] == b) {
+                    return base + i;
+                }
+            }
+        }
+        return to;
+    }
+
+    @Override
+    int indexOfUnsafe(final CharSequence input, final int from, final int to, final AsciiSet safe) {
+        if (to - from < MIN_LENGTH || !(input instanceof String)) {
+            return super.indexOfUnsafe(input, from, to, safe);
+        }
+        final String s = (String) input;
+        final char[] chunk = CHUNKS.get();
+        final ShortVector words = words(safe);
+        for (int base = from; base < to; base += CHUNK) {
+            final int n = Math.min(CHUNK, to - base);
+            s.getChars(base, base + n, chunk, 0);
+            final int bound = SPECIES.loopBound(n);
+            int i = 0;
+            for (; i < bound; i += SPECIES.length()) {
+                final ShortVector v = ShortVector.fromCharArray(SPECIES, chunk, i);
+                final VectorShuffle<Short> wordIndexes = v.lanewise(VectorOperators.LSHR, 4)
+                        .and((short) 7)
+                        .toShuffle();
+                final ShortVector bits = words.rearrange(wordIndexes)
+                        .lanewise(VectorOperators.LSHR, v.and((short) 15))
+                        .and((short) 1);
+                final VectorMask<Short> unsafe = bits.eq((short) 0)
+                        .or(v.compare(VectorOperators.UNSIGNED_GE, (short) 128));
+                if (unsafe.anyTrue()) {
+                    return base + i + unsafe.firstTrue();
+                }
+            }
+            for (; i < n; i++) {
+                if (!safe.contains(chunk[i])) {
+                    return base + i;
+                }
+            }
+        }
+        return to;
+    }
+
+    /// The eight words of the map, repeated across the lanes.
+    private static ShortVector words(final AsciiSet set) {
+        if (set.vectorWords instanceof ShortVector cached) {
+            return cached;
+        }
+        final short[] lanes = new short[SPECIES.length()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = set.word(i & 7);
+        }
+        final ShortVector words = ShortVector.fromArray(SPECIES, lanes, 0);
+        set.vectorWords = words;
+        return words;
+    }
+
+}